@@ -27,7 +27,7 @@ public class BulkOperation extends AbstractOperation {
 
     private final String bucket;
 
-    BulkOperation(Connection connection, String bucket) {
+    public BulkOperation(Connection connection, String bucket) {
         super(connection);
         this.bucket = bucket;
     }
@@ -36,6 +36,14 @@ public class BulkOperation extends AbstractOperation {
         return connection.bulkGet(new Context(keys), type);
     }
 
+    public <T> Values<T> get(Set<String> keys, Class<T> type, Set<String> fields) throws TerrastoreClientException {
+        return connection.bulkGet(new Context(keys, fields), type);
+    }
+
+    public <T> ValuesIterator<T> stream(Set<String> keys, Class<T> type) throws TerrastoreClientException {
+        return connection.streamBulkGet(new Context(keys), type);
+    }
+
     public <T> Set<String> put(Values<T> values) throws TerrastoreClientException {
         return connection.bulkPut(new Context(values));
     }
@@ -44,15 +52,22 @@ public class BulkOperation extends AbstractOperation {
 
         private final Set keys;
         private final Values values;
+        private final Set<String> fields;
 
         public Context(Set keys) {
+            this(keys, null);
+        }
+
+        public Context(Set keys, Set<String> fields) {
             this.keys = keys;
             this.values = null;
+            this.fields = fields;
         }
 
         public Context(Values values) {
             this.keys = null;
             this.values = values;
+            this.fields = null;
         }
 
         public String getBucket() {
@@ -67,5 +82,9 @@ public class BulkOperation extends AbstractOperation {
             return values;
         }
 
+        public Set<String> getFields() {
+            return fields;
+        }
+
     }
 }
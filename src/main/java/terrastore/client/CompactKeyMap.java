@@ -0,0 +1,259 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Insertion-ordered {@link java.util.Map} with keys held in a {@link CompactKeySet}, and values in an array
+ * indexed by key ordinals, so that large results cost no map entry nor key string per value.<br>
+ * This map is not thread-safe while being modified.
+ *
+ * @author Sergio Bossa
+ */
+public class CompactKeyMap<V> extends AbstractMap<String, V> {
+
+    private final CompactKeySet keys;
+    private Object[] values;
+
+    public CompactKeyMap() {
+        this(16);
+    }
+
+    public CompactKeyMap(int expectedSize) {
+        this.keys = new CompactKeySet(expectedSize);
+        this.values = new Object[Math.max(expectedSize, 16)];
+    }
+
+    public CompactKeyMap(Map<String, ? extends V> other) {
+        this(other.size());
+        putAll(other);
+    }
+
+    @Override
+    public V put(String key, V value) {
+        boolean present = keys.contains(key);
+        int ordinal = keys.put(key);
+        if (ordinal >= values.length) {
+            Object[] newValues = new Object[values.length * 2];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            values = newValues;
+        }
+        V previous = present ? valueAt(ordinal) : null;
+        values[ordinal] = value;
+        return previous;
+    }
+
+    @Override
+    public V get(Object key) {
+        int ordinal = keys.ordinalOf(key);
+        return ordinal >= 0 ? valueAt(ordinal) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public V remove(Object key) {
+        int ordinal = keys.ordinalOf(key);
+        if (ordinal >= 0) {
+            V previous = valueAt(ordinal);
+            removeAt(ordinal);
+            return previous;
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+        values = new Object[16];
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Map.Entry<String, V>> entries = entrySet().iterator();
+                return new Iterator<String>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return entries.next().getKey();
+                    }
+
+                    @Override
+                    public void remove() {
+                        entries.remove();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return keys.contains(key);
+            }
+
+            @Override
+            public boolean remove(Object key) {
+                int ordinal = keys.ordinalOf(key);
+                if (ordinal >= 0) {
+                    removeAt(ordinal);
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new Iterator<Map.Entry<String, V>>() {
+
+                    private int next = keys.nextOrdinal(0);
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public Map.Entry<String, V> next() {
+                        if (hasNext()) {
+                            last = next;
+                            next = keys.nextOrdinal(next + 1);
+                            return new OrdinalEntry(last);
+                        } else {
+                            throw new NoSuchElementException();
+                        }
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+
+            @Override
+            public void clear() {
+                CompactKeyMap.this.clear();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int ordinal) {
+        return (V) values[ordinal];
+    }
+
+    private void removeAt(int ordinal) {
+        keys.removeAt(ordinal);
+        // Release the value, as its slot is only reused if the same key is put again:
+        values[ordinal] = null;
+    }
+
+    private class OrdinalEntry implements Map.Entry<String, V> {
+
+        private final int ordinal;
+        private final String key;
+        private V value;
+
+        public OrdinalEntry(int ordinal) {
+            this.ordinal = ordinal;
+            this.key = keys.keyAt(ordinal);
+            this.value = valueAt(ordinal);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = this.value;
+            this.value = value;
+            values[ordinal] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Map.Entry) {
+                Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+                return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
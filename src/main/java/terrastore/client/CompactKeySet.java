@@ -0,0 +1,356 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact, insertion-ordered, {@link java.util.Set} of keys, holding all keys as UTF-8 bytes in a single
+ * shared arena, indexed by an open-addressing hash table.<br>
+ * Each key is stored only once, and is identified by its ordinal (insertion position): key strings are only
+ * materialized when accessed, so holding large key sets costs little more than the UTF-8 size of their keys.<br>
+ * Removed keys are just marked as such, so their space is only reclaimed by {@link #clear()}, and keys added back
+ * after removal keep their former ordinal and position.<br>
+ * This set is not thread-safe while being modified.
+ *
+ * @author Sergio Bossa
+ */
+public class CompactKeySet extends AbstractSet<String> {
+
+    private byte[] arena;
+    private int arenaSize;
+    private int[] offsets;
+    private int[] hashes;
+    private int[] table;
+    private long[] removed;
+    private int size;
+    private int removedCount;
+
+    public CompactKeySet() {
+        this(16);
+    }
+
+    public CompactKeySet(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        this.arena = new byte[capacity * 16];
+        this.offsets = new int[capacity + 1];
+        this.hashes = new int[capacity];
+        this.table = new int[tableSize(capacity)];
+    }
+
+    @Override
+    public boolean add(String key) {
+        int current = size();
+        put(key);
+        return size() != current;
+    }
+
+    /**
+     * Add the given key if not already present, and return its ordinal.
+     *
+     * @param key The key to add.
+     * @return The ordinal of the given key.
+     */
+    public int put(String key) {
+        int hash = key.hashCode();
+        int slot = find(key, hash);
+        if (table[slot] != 0) {
+            int ordinal = table[slot] - 1;
+            if (isRemoved(ordinal)) {
+                removed[ordinal >>> 6] &= ~(1L << ordinal);
+                removedCount--;
+            }
+            return ordinal;
+        } else {
+            int ordinal = size++;
+            if (size == hashes.length) {
+                grow();
+                slot = find(key, hash);
+            }
+            encode(key);
+            offsets[ordinal + 1] = arenaSize;
+            hashes[ordinal] = hash;
+            table[slot] = ordinal + 1;
+            return ordinal;
+        }
+    }
+
+    /**
+     * Get the ordinal of the given key.
+     *
+     * @param key The key to look for.
+     * @return The key ordinal, or -1 if not present.
+     */
+    public int ordinalOf(Object key) {
+        if (key instanceof String) {
+            int ordinal = table[find((String) key, key.hashCode())] - 1;
+            return ordinal >= 0 && !isRemoved(ordinal) ? ordinal : -1;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the ordinal of the first key not removed, starting from the given ordinal.
+     *
+     * @param from The ordinal to start from.
+     * @return The ordinal of the first key not removed, or -1 if none.
+     */
+    public int nextOrdinal(int from) {
+        int ordinal = Math.max(from, 0);
+        while (ordinal < size && isRemoved(ordinal)) {
+            ordinal++;
+        }
+        return ordinal < size ? ordinal : -1;
+    }
+
+    /**
+     * Get the key with the given ordinal.
+     *
+     * @param ordinal The key ordinal, between 0 (inclusive) and the set size (exclusive).
+     * @return The key.
+     */
+    public String keyAt(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Invalid key ordinal: " + ordinal);
+        }
+        return decode(offsets[ordinal], offsets[ordinal + 1]);
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return ordinalOf(key) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        int ordinal = ordinalOf(key);
+        if (ordinal >= 0) {
+            removeAt(ordinal);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Remove the key with the given ordinal, if not already removed.
+     *
+     * @param ordinal The key ordinal, between 0 (inclusive) and the set size (exclusive).
+     */
+    public void removeAt(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Invalid key ordinal: " + ordinal);
+        }
+        if (!isRemoved(ordinal)) {
+            if (removed == null) {
+                removed = new long[bitsSize(hashes.length)];
+            }
+            removed[ordinal >>> 6] |= 1L << ordinal;
+            removedCount++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, 0);
+        removed = null;
+        arenaSize = 0;
+        size = 0;
+        removedCount = 0;
+    }
+
+    @Override
+    public int size() {
+        return size - removedCount;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int next = nextOrdinal(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (hasNext()) {
+                    last = next;
+                    next = nextOrdinal(next + 1);
+                    return keyAt(last);
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                removeAt(last);
+                last = -1;
+            }
+        };
+    }
+
+    private boolean isRemoved(int ordinal) {
+        return removed != null && (removed[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    private int find(String key, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            int ordinal = table[slot] - 1;
+            if (hashes[ordinal] == hash && matches(ordinal, key)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        int[] newOffsets = new int[capacity + 1];
+        int[] newHashes = new int[capacity];
+        System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+        System.arraycopy(hashes, 0, newHashes, 0, hashes.length);
+        offsets = newOffsets;
+        hashes = newHashes;
+        if (removed != null) {
+            long[] newRemoved = new long[bitsSize(capacity)];
+            System.arraycopy(removed, 0, newRemoved, 0, removed.length);
+            removed = newRemoved;
+        }
+        table = new int[tableSize(capacity)];
+        int mask = table.length - 1;
+        for (int ordinal = 0; ordinal < size - 1; ordinal++) {
+            int slot = spread(hashes[ordinal]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = ordinal + 1;
+        }
+    }
+
+    private void encode(String key) {
+        int length = key.length();
+        ensureArena(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                arena[arenaSize++] = (byte) c;
+            } else if (c < 0x800) {
+                arena[arenaSize++] = (byte) (0xC0 | (c >> 6));
+                arena[arenaSize++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                arena[arenaSize++] = (byte) (0xF0 | (codePoint >> 18));
+                arena[arenaSize++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                arena[arenaSize++] = (byte) (0xE0 | (c >> 12));
+                arena[arenaSize++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                arena[arenaSize++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private String decode(int start, int end) {
+        char[] chars = new char[end - start];
+        int length = 0;
+        int position = start;
+        while (position < end) {
+            int codePoint = decodeAt(position);
+            position += sequenceLength(arena[position]);
+            length += Character.toChars(codePoint, chars, length);
+        }
+        return new String(chars, 0, length);
+    }
+
+    private boolean matches(int ordinal, String key) {
+        int position = offsets[ordinal];
+        int end = offsets[ordinal + 1];
+        int length = key.length();
+        int i = 0;
+        while (position < end && i < length) {
+            int codePoint = decodeAt(position);
+            position += sequenceLength(arena[position]);
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (i + 1 >= length || key.codePointAt(i) != codePoint) {
+                    return false;
+                }
+                i += 2;
+            } else if (key.charAt(i++) != codePoint) {
+                return false;
+            }
+        }
+        return position == end && i == length;
+    }
+
+    private int decodeAt(int position) {
+        int b = arena[position] & 0xFF;
+        if (b < 0x80) {
+            return b;
+        } else if (b < 0xE0) {
+            return ((b & 0x1F) << 6) | (arena[position + 1] & 0x3F);
+        } else if (b < 0xF0) {
+            return ((b & 0x0F) << 12) | ((arena[position + 1] & 0x3F) << 6) | (arena[position + 2] & 0x3F);
+        } else {
+            return ((b & 0x07) << 18) | ((arena[position + 1] & 0x3F) << 12) | ((arena[position + 2] & 0x3F) << 6) | (arena[position + 3] & 0x3F);
+        }
+    }
+
+    private int sequenceLength(byte first) {
+        int b = first & 0xFF;
+        return b < 0x80 ? 1 : (b < 0xE0 ? 2 : (b < 0xF0 ? 3 : 4));
+    }
+
+    private void ensureArena(int required) {
+        if (arenaSize + required > arena.length) {
+            byte[] newArena = new byte[Math.max(arena.length * 2, arenaSize + required)];
+            System.arraycopy(arena, 0, newArena, 0, arenaSize);
+            arena = newArena;
+        }
+    }
+
+    private static int bitsSize(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+    private static int tableSize(int capacity) {
+        int tableSize = 1;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -60,6 +60,32 @@ public class ConditionalOperation extends AbstractOperation {
         return connection.getValue(new Context(), type);
     }
 
+    /**
+     * Retrieves the value of the current key if the predicate condition is satisfied,
+     * or null if the key does not exist or the condition is not satisfied.<br>
+     * Missing keys and unsatisfied conditions are cheaply detected by response status,
+     * with no exception being thrown.
+     * 
+     * @param <T> The Java type of the object to retrieve.
+     * @param type The Java class of the object to retrieve.
+     * @return The value stored under the current key, or null.
+     * @throws TerrastoreClientException if the operation fails, ie due to an invalid predicate.
+     */
+    public <T> T getIfPresent(Class<T> type) throws TerrastoreClientException {
+        return connection.getValueIfPresent(new Context(), type);
+    }
+
+    /**
+     * Checks if the current key exists and its value satisfies the predicate condition,
+     * without retrieving its value.
+     * 
+     * @return True if the key exists and the condition is satisfied, false otherwise.
+     * @throws TerrastoreClientException if the operation fails, ie due to an invalid predicate.
+     */
+    public boolean exists() throws TerrastoreClientException {
+        return connection.exists(new Context());
+    }
+
     public class Context {
 
         public String getKey() {
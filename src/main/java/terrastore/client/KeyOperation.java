@@ -15,6 +15,7 @@
  */
 package terrastore.client;
 
+import java.util.Set;
 import terrastore.client.connection.Connection;
 import terrastore.client.merge.MergeDescriptor;
 import terrastore.client.merge.MergeOperation;
@@ -47,6 +48,8 @@ public class KeyOperation extends AbstractOperation {
      * 
      * If a value is already present for this key, it will be
      * overwritten/replaced by the specified value.
+     * Values given as byte arrays or {@link java.nio.ByteBuffer}s are written
+     * untouched, as pre-serialized Json.
      * 
      * @param <T> The Java type for the value
      * @param value The value to be written.
@@ -69,6 +72,8 @@ public class KeyOperation extends AbstractOperation {
     /**
      * Retrieves the stored value for this key, as an instance of the specified
      * Java type.
+     * Byte arrays and {@link java.nio.ByteBuffer}s get the raw Json value,
+     * while {@link org.codehaus.jackson.JsonNode} gets its Json tree.
      * 
      * @param <T> The Java type for this value.
      * @param type The Java type for this value.
@@ -80,6 +85,45 @@ public class KeyOperation extends AbstractOperation {
         return connection.getValue(new Context(), type);
     }
 
+    /**
+     * Retrieves the stored value for this key, as an instance of the specified
+     * Java type, only reading the specified top-level fields and skipping all others.
+     * 
+     * @param <T> The Java type for this value.
+     * @param type The Java type for this value.
+     * @param fields The names of the fields to read.
+     * @return The projected value for the current key, as an instance of <T>/type
+     * @throws TerrastoreClientException if server communication fails, or the
+     *             key does not exist within the current bucket.
+     */
+    public <T> T get(Class<T> type, Set<String> fields) throws TerrastoreClientException {
+        return connection.getValue(new Context(fields), type);
+    }
+
+    /**
+     * Retrieves the stored value for this key, as an instance of the specified
+     * Java type, or null if the key does not exist.<br>
+     * Missing keys are cheaply detected by response status, with no exception being thrown.
+     * 
+     * @param <T> The Java type for this value.
+     * @param type The Java type for this value.
+     * @return The value for the current key, or null if missing.
+     * @throws TerrastoreClientException if server communication fails.
+     */
+    public <T> T getIfPresent(Class<T> type) throws TerrastoreClientException {
+        return connection.getValueIfPresent(new Context(), type);
+    }
+
+    /**
+     * Checks if this key exists within the current bucket, without retrieving its value.
+     * 
+     * @return True if the key exists, false otherwise.
+     * @throws TerrastoreClientException if server communication fails.
+     */
+    public boolean exists() throws TerrastoreClientException {
+        return connection.exists(new Context());
+    }
+
     /**
      * Sets up an {@link UpdateOperation} for the value of the current key.
      *
@@ -112,6 +156,16 @@ public class KeyOperation extends AbstractOperation {
 
     public class Context {
 
+        private final Set<String> fields;
+
+        public Context() {
+            this.fields = null;
+        }
+
+        public Context(Set<String> fields) {
+            this.fields = fields;
+        }
+
         public String getKey() {
             return key;
         }
@@ -119,5 +173,9 @@ public class KeyOperation extends AbstractOperation {
         public String getBucket() {
             return bucket;
         }
+
+        public Set<String> getFields() {
+            return fields;
+        }
     }
 }
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link Values} implementation holding the raw Json bytes of each value, and deserializing
+ * them to Java objects only when first accessed, either by key or by iteration.<br>
+ * Deserialized values are cached, so that each value is deserialized at most once.
+ *
+ * @author Sergio Bossa
+ */
+public class LazyValues<T> extends Values<T> {
+
+    public LazyValues(ByteBuffer data, CompactKeySet keys, int[] offsets, int[] lengths, Binder<T> binder) {
+        super(new LazyMap<T>(data, keys, offsets, lengths, binder));
+    }
+
+    /**
+     * Deserializes raw Json values to Java objects.
+     */
+    public static interface Binder<T> {
+
+        /**
+         * Deserialize the Json value contained in the given buffer at the given offset and with the given length.
+         */
+        public T bind(ByteBuffer data, int offset, int length) throws IOException;
+    }
+
+    private static class LazyMap<T> extends AbstractMap<String, T> {
+
+        private final ByteBuffer data;
+        private final CompactKeySet keys;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final Binder<T> binder;
+        private final AtomicReferenceArray<Object> bound;
+
+        public LazyMap(ByteBuffer data, CompactKeySet keys, int[] offsets, int[] lengths, Binder<T> binder) {
+            this.data = data;
+            this.keys = keys;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.binder = binder;
+            this.bound = new AtomicReferenceArray<Object>(keys.size());
+        }
+
+        @Override
+        public T get(Object key) {
+            int ordinal = keys.ordinalOf(key);
+            return ordinal >= 0 ? bind(ordinal) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(keys);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, T>> entrySet() {
+            return new AbstractSet<Map.Entry<String, T>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, T>> iterator() {
+                    return new Iterator<Map.Entry<String, T>>() {
+
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, T> next() {
+                            if (hasNext()) {
+                                return new LazyEntry(next++);
+                            } else {
+                                throw new NoSuchElementException();
+                            }
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("Cannot remove lazy values.");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+
+        private T bind(int ordinal) {
+            Object value = bound.get(ordinal);
+            if (value == null) {
+                try {
+                    value = binder.bind(data, offsets[ordinal], lengths[ordinal]);
+                    bound.set(ordinal, value);
+                } catch (IOException ex) {
+                    throw new TerrastoreClientException("Could not read value for key: " + keys.keyAt(ordinal), ex);
+                }
+            }
+            return (T) value;
+        }
+
+        private class LazyEntry implements Map.Entry<String, T> {
+
+            private final int ordinal;
+
+            public LazyEntry(int ordinal) {
+                this.ordinal = ordinal;
+            }
+
+            @Override
+            public String getKey() {
+                return keys.keyAt(ordinal);
+            }
+
+            @Override
+            public T getValue() {
+                return bind(ordinal);
+            }
+
+            @Override
+            public T setValue(T value) {
+                throw new UnsupportedOperationException("Cannot set lazy values.");
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (obj instanceof Map.Entry) {
+                    Map.Entry other = (Map.Entry) obj;
+                    return getKey().equals(other.getKey()) && (getValue() == null ? other.getValue() == null : getValue().equals(other.getValue()));
+                } else {
+                    return false;
+                }
+            }
+
+            @Override
+            public int hashCode() {
+                return getKey().hashCode() ^ (getValue() == null ? 0 : getValue().hashCode());
+            }
+        }
+    }
+}
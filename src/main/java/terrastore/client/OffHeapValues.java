@@ -0,0 +1,174 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import terrastore.client.mapping.DirectBuffers;
+
+/**
+ * {@link Values} implementation holding raw Json values in direct (off-heap) memory, indexed by a
+ * {@link CompactKeySet}, so that only the compact key index is actually held on the heap.<br>
+ * Values are deserialized on every access, and never cached: callers should hold on to accessed values
+ * if needing them more than once.<br>
+ * Off-heap memory is freed by {@link #close()}, after which values cannot be accessed anymore.
+ *
+ * @author Sergio Bossa
+ */
+public class OffHeapValues<T> extends Values<T> implements Closeable {
+
+    private final OffHeapMap<T> values;
+
+    public OffHeapValues(ByteBuffer data, CompactKeySet keys, int[] offsets, int[] lengths, LazyValues.Binder<T> binder) {
+        this(new OffHeapMap<T>(data, keys, offsets, lengths, binder));
+    }
+
+    private OffHeapValues(OffHeapMap<T> values) {
+        super(values);
+        this.values = values;
+    }
+
+    /**
+     * Get the size in bytes of the off-heap memory held by these values.
+     */
+    public long getOffHeapSize() {
+        return values.data.capacity();
+    }
+
+    /**
+     * Free the off-heap memory held by these values.
+     */
+    @Override
+    public void close() {
+        values.close();
+    }
+
+    private static class OffHeapMap<T> extends AbstractMap<String, T> {
+
+        private final ByteBuffer data;
+        private final CompactKeySet keys;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final LazyValues.Binder<T> binder;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean closed;
+
+        public OffHeapMap(ByteBuffer data, CompactKeySet keys, int[] offsets, int[] lengths, LazyValues.Binder<T> binder) {
+            this.data = data;
+            this.keys = keys;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.binder = binder;
+        }
+
+        @Override
+        public T get(Object key) {
+            int ordinal = keys.ordinalOf(key);
+            return ordinal >= 0 ? bind(ordinal) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(keys);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, T>> entrySet() {
+            return new AbstractSet<Map.Entry<String, T>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, T>> iterator() {
+                    return new Iterator<Map.Entry<String, T>>() {
+
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, T> next() {
+                            if (hasNext()) {
+                                int ordinal = next++;
+                                return new AbstractMap.SimpleImmutableEntry<String, T>(keys.keyAt(ordinal), bind(ordinal));
+                            } else {
+                                throw new NoSuchElementException();
+                            }
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("Cannot remove off-heap values.");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    DirectBuffers.free(data);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private T bind(int ordinal) {
+            // Prevent memory from being freed while reading:
+            lock.readLock().lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Off-heap values have been closed.");
+                }
+                return binder.bind(data, offsets[ordinal], lengths[ordinal]);
+            } catch (IOException ex) {
+                throw new TerrastoreClientException("Could not read value for key: " + keys.keyAt(ordinal), ex);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
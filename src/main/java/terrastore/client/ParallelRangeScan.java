@@ -0,0 +1,195 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link ValuesIterator} implementation scanning a range by splitting it into contiguous sub-ranges
+ * at the given split keys, and concurrently scanning each one of them by its own {@link RangeCursor}.<br>
+ * Each sub-range is scanned by a single thread, fetching pages on demand while previous entries are queued for consumption.<br>
+ * Sub-ranges are all queried through the range connection, so they're sent to the same host chosen by its host manager.<br>
+ * If ordered, entries are returned in range order, by consuming sub-ranges one after another while the following
+ * ones are fetched in background; otherwise, entries are returned as soon as they're fetched by any sub-range scan.
+ *
+ * @author Sergio Bossa
+ */
+public class ParallelRangeScan<T> implements ValuesIterator<T> {
+
+    private final List<BlockingQueue<Element<T>>> queues;
+    private final ExecutorService scanners;
+    private final boolean ordered;
+    private final int scans;
+    //
+    private volatile int currentQueue;
+    private volatile int completedScans;
+    private volatile Map.Entry<String, T> nextEntry;
+    private volatile boolean closed;
+
+    ParallelRangeScan(RangeOperation range, String startKey, String endKey, List<String> splitKeys, int pageSize, Class<T> type, boolean ordered) {
+        this.scans = splitKeys.size() + 1;
+        this.ordered = ordered;
+        this.queues = new ArrayList<BlockingQueue<Element<T>>>(scans);
+        this.scanners = Executors.newFixedThreadPool(scans, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "Terrastore-ParallelRangeScan");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (ordered) {
+            for (int i = 0; i < scans; i++) {
+                queues.add(new ArrayBlockingQueue<Element<T>>(pageSize));
+            }
+        } else {
+            BlockingQueue<Element<T>> queue = new ArrayBlockingQueue<Element<T>>(pageSize * scans);
+            for (int i = 0; i < scans; i++) {
+                queues.add(queue);
+            }
+        }
+        for (int i = 0; i < scans; i++) {
+            String from = i == 0 ? startKey : splitKeys.get(i - 1);
+            String to = i == scans - 1 ? endKey : splitKeys.get(i);
+            String excluded = i == scans - 1 ? null : to;
+            scanners.execute(new SubRangeScan<T>(range.to(to), from, excluded, pageSize, type, queues.get(i)));
+        }
+        scanners.shutdown();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!closed && nextEntry == null && completedScans < scans) {
+            Element<T> element = take(queues.get(currentQueue));
+            if (element.failure != null) {
+                close();
+                throw element.failure;
+            } else if (element.entry != null) {
+                nextEntry = element.entry;
+            } else {
+                completedScans++;
+                if (ordered) {
+                    currentQueue++;
+                }
+            }
+        }
+        return !closed && nextEntry != null;
+    }
+
+    @Override
+    public Map.Entry<String, T> next() {
+        if (hasNext()) {
+            Map.Entry<String, T> result = nextEntry;
+            nextEntry = null;
+            return result;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove entries from a range scan.");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        nextEntry = null;
+        scanners.shutdownNow();
+    }
+
+    private Element<T> take(BlockingQueue<Element<T>> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new TerrastoreClientException("Interrupted while scanning range.", ex);
+        }
+    }
+
+    private static class SubRangeScan<T> implements Runnable {
+
+        private final RangeOperation range;
+        private final String startKey;
+        private final String excludedKey;
+        private final int pageSize;
+        private final Class<T> type;
+        private final BlockingQueue<Element<T>> queue;
+
+        public SubRangeScan(RangeOperation range, String startKey, String excludedKey, int pageSize, Class<T> type, BlockingQueue<Element<T>> queue) {
+            this.range = range;
+            this.startKey = startKey;
+            this.excludedKey = excludedKey;
+            this.pageSize = pageSize;
+            this.type = type;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            RangeCursor<T> cursor = null;
+            try {
+                cursor = new RangeCursor<T>(range, startKey, false, pageSize, type, false);
+                while (cursor.hasNext()) {
+                    Map.Entry<String, T> entry = cursor.next();
+                    if (!entry.getKey().equals(excludedKey)) {
+                        queue.put(new Element<T>(entry, null));
+                    }
+                }
+                // Elements with no entry and no failure mark the end of the sub-range:
+                queue.put(new Element<T>(null, null));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable ex) {
+                // Consumers must always be notified, or they would wait forever:
+                TerrastoreClientException failure = ex instanceof TerrastoreClientException
+                        ? (TerrastoreClientException) ex
+                        : new TerrastoreClientException("Could not scan sub-range: " + ex, ex);
+                try {
+                    queue.put(new Element<T>(null, failure));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
+    private static class Element<T> {
+
+        private final Map.Entry<String, T> entry;
+        private final TerrastoreClientException failure;
+
+        public Element(Map.Entry<String, T> entry, TerrastoreClientException failure) {
+            this.entry = entry;
+            this.failure = failure;
+        }
+    }
+}
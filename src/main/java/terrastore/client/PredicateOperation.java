@@ -15,7 +15,7 @@
  */
 package terrastore.client;
 
-
+import java.util.Set;
 import terrastore.client.connection.Connection;
 
 /**
@@ -27,6 +27,10 @@ public class PredicateOperation extends AbstractOperation {
 
     private final String bucket;
     private final String predicate;
+    private volatile boolean lazy;
+    private volatile long spillThreshold;
+    private volatile boolean offHeap;
+    private volatile Set<String> fields;
 
     PredicateOperation(Connection connection, String bucket, String predicate) {
         super(connection);
@@ -40,6 +44,69 @@ public class PredicateOperation extends AbstractOperation {
         this.predicate = predicate;
     }
 
+    PredicateOperation(PredicateOperation other) {
+        super(other.connection);
+        this.bucket = other.bucket;
+        this.predicate = other.predicate;
+        this.lazy = other.lazy;
+        this.spillThreshold = other.spillThreshold;
+        this.offHeap = other.offHeap;
+        this.fields = other.fields;
+    }
+
+    /**
+     * Specifies to retrieve values as {@link LazyValues}, deserializing each value
+     * only when first accessed rather than when the response is read.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     */
+    public PredicateOperation lazy() {
+        checkNotProjected();
+        PredicateOperation newInstance = new PredicateOperation(this);
+        newInstance.lazy = true;
+        return newInstance;
+    }
+
+    /**
+     * Specifies the max size in bytes of values to hold on the heap: bigger results are spilled
+     * to a temporary memory-mapped file as {@link SpilledValues}, and deserialized on access.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     *
+     * @param spillThreshold The max size in bytes of values to hold on the heap.
+     */
+    public PredicateOperation spillOver(long spillThreshold) {
+        checkNotProjected();
+        PredicateOperation newInstance = new PredicateOperation(this);
+        newInstance.spillThreshold = spillThreshold;
+        return newInstance;
+    }
+
+    /**
+     * Specifies to retrieve values as {@link OffHeapValues}, holding them in off-heap memory
+     * and deserializing them on access: returned values must be closed in order to free memory.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     */
+    public PredicateOperation offHeap() {
+        checkNotProjected();
+        PredicateOperation newInstance = new PredicateOperation(this);
+        newInstance.offHeap = true;
+        return newInstance;
+    }
+
+    /**
+     * Specifies to only read the given top-level fields of each value, skipping all others.<br>
+     * It cannot be combined with lazy, spilled or off-heap values.
+     *
+     * @param fields The names of the fields to read.
+     */
+    public PredicateOperation project(Set<String> fields) {
+        if (fields != null && (lazy || offHeap || spillThreshold > 0)) {
+            throw new IllegalArgumentException("Projected fields cannot be combined with lazy, spilled or off-heap values.");
+        }
+        PredicateOperation newInstance = new PredicateOperation(this);
+        newInstance.fields = fields;
+        return newInstance;
+    }
+
     /**
      * Retrieves a Map of all keys/values matching the specified predicate.
      * 
@@ -52,6 +119,27 @@ public class PredicateOperation extends AbstractOperation {
         return connection.queryByPredicate(new Context(), type);
     }
 
+    /**
+     * Retrieves all keys/values matching the specified predicate as a stream,
+     * lazily reading them from the server response as they're consumed.<br>
+     * The returned iterator holds the server connection, so it must be closed
+     * if not fully consumed.
+     *
+     * @param <T> The Java type to deserialize the values to.
+     * @param type The Java class to deserialize the values to.
+     * @return A {@link ValuesIterator} over matching keys and values.
+     * @throws TerrastoreClientException if the request is invalid, ie due to an incorrect predicate syntax.
+     */
+    public <T> ValuesIterator<T> stream(Class<T> type) throws TerrastoreClientException {
+        return connection.streamByPredicate(new Context(), type);
+    }
+
+    private void checkNotProjected() {
+        if (fields != null) {
+            throw new IllegalArgumentException("Projected fields cannot be combined with lazy, spilled or off-heap values.");
+        }
+    }
+
     public class Context {
 
         public String getBucket() {
@@ -61,5 +149,21 @@ public class PredicateOperation extends AbstractOperation {
         public String getPredicate() {
             return predicate;
         }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public long getSpillThreshold() {
+            return spillThreshold;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public Set<String> getFields() {
+            return fields;
+        }
     }
 }
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link ValuesIterator} implementation scanning a range one page at a time.<br>
+ * Each page is retrieved by a range query starting from the last key of the previous page, and the next page
+ * is prefetched in background while the current one is being consumed, so at most two pages are held in memory:
+ * cursors used by background scans can fetch pages on demand instead, with no prefetching thread of their own.<br>
+ * Scan progress can be tracked by {@link #getProgress()} and {@link #getCheckpoint()}: the latter can be used
+ * for resuming an interrupted scan from the last consumed key.<br>
+ * Pages holding off-heap or spilled values are closed as soon as the cursor moves past them, and on {@link #close()}.
+ *
+ * @author Sergio Bossa
+ */
+public class RangeCursor<T> implements ValuesIterator<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    //
+    private final RangeOperation range;
+    private final Class<T> type;
+    private final int pageSize;
+    private final ExecutorService prefetcher;
+    //
+    private volatile FutureTask<Page> nextPage;
+    private volatile Values<T> currentValues;
+    private volatile Iterator<Map.Entry<String, T>> currentPage;
+    private volatile String checkpoint;
+    private volatile long progress;
+    private volatile boolean closed;
+
+    RangeCursor(RangeOperation range, String startKey, int pageSize, Class<T> type) {
+        this(range, startKey, false, pageSize, type, true);
+    }
+
+    RangeCursor(RangeOperation range, String startKey, boolean resume, int pageSize, Class<T> type) {
+        this(range, startKey, resume, pageSize, type, true);
+    }
+
+    RangeCursor(RangeOperation range, String startKey, boolean resume, int pageSize, Class<T> type, boolean prefetch) {
+        this.range = range;
+        this.type = type;
+        this.pageSize = Math.max(pageSize, 2);
+        if (prefetch) {
+            this.prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "Terrastore-RangeCursor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            this.prefetcher = null;
+        }
+        this.checkpoint = resume ? startKey : null;
+        this.nextPage = prefetch(startKey, resume);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!closed && (currentPage == null || !currentPage.hasNext())) {
+            if (nextPage != null) {
+                Page page = await(nextPage);
+                release(currentValues);
+                currentValues = page.values;
+                if (page.last) {
+                    nextPage = null;
+                    if (prefetcher != null) {
+                        prefetcher.shutdown();
+                    }
+                } else {
+                    nextPage = prefetch(page.lastKey, true);
+                }
+                currentPage = page.values.entrySet().iterator();
+                if (page.skipFirst && currentPage.hasNext()) {
+                    currentPage.next();
+                }
+            } else {
+                release(currentValues);
+                currentValues = null;
+                return false;
+            }
+        }
+        return !closed;
+    }
+
+    @Override
+    public Map.Entry<String, T> next() {
+        if (hasNext()) {
+            Map.Entry<String, T> entry = currentPage.next();
+            checkpoint = entry.getKey();
+            progress++;
+            return entry;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Get the key of the last consumed entry, to be used for resuming the scan after it.
+     *
+     * @return The key of the last consumed entry, or null if no entry has been consumed yet.
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Get the number of entries consumed so far.
+     *
+     * @return The number of consumed entries.
+     */
+    public long getProgress() {
+        return progress;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove entries from a range cursor.");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        currentPage = null;
+        release(currentValues);
+        currentValues = null;
+        if (nextPage != null) {
+            // Pages already fetched must be released too, while pages being fetched are released by the prefetcher itself:
+            if (!nextPage.cancel(true) && !nextPage.isCancelled()) {
+                try {
+                    release(nextPage.get().values);
+                } catch (Exception ex) {
+                    // Ignore: failed pages have nothing to release.
+                }
+            }
+            nextPage = null;
+        }
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+
+    private FutureTask<Page> prefetch(final String startKey, final boolean skipStartKey) {
+        FutureTask<Page> page = new FutureTask<Page>(new Callable<Page>() {
+
+            @Override
+            public Page call() throws Exception {
+                Values<T> values = range.from(startKey).limit(pageSize).get(type);
+                if (closed) {
+                    release(values);
+                    throw new InterruptedException("Range cursor has been closed.");
+                }
+                String lastKey = null;
+                for (String key : values.keySet()) {
+                    lastKey = key;
+                }
+                boolean skipFirst = skipStartKey && lastKey != null && startKey.equals(values.keySet().iterator().next());
+                return new Page(values, lastKey, values.size() < pageSize, skipFirst);
+            }
+        });
+        if (prefetcher != null) {
+            prefetcher.execute(page);
+        }
+        return page;
+    }
+
+    private void release(Values<T> values) {
+        if (values instanceof Closeable) {
+            try {
+                ((Closeable) values).close();
+            } catch (IOException ex) {
+                // Ignore: values are released anyways once garbage collected.
+            }
+        }
+    }
+
+    private Page await(FutureTask<Page> page) {
+        try {
+            if (prefetcher == null) {
+                // Fetch on demand, doing nothing if already fetched:
+                page.run();
+            }
+            return page.get();
+        } catch (ExecutionException ex) {
+            close();
+            if (ex.getCause() instanceof TerrastoreClientException) {
+                throw (TerrastoreClientException) ex.getCause();
+            } else {
+                throw new TerrastoreClientException("Could not fetch range page: " + ex.getCause(), ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new TerrastoreClientException("Interrupted while fetching range page.", ex);
+        }
+    }
+
+    private class Page {
+
+        private final Values<T> values;
+        private final String lastKey;
+        private final boolean last;
+        private final boolean skipFirst;
+
+        public Page(Values<T> values, String lastKey, boolean last, boolean skipFirst) {
+            this.values = values;
+            this.lastKey = lastKey;
+            this.last = last;
+            this.skipFirst = skipFirst;
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package terrastore.client;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import terrastore.client.connection.Connection;
@@ -26,6 +29,8 @@ import terrastore.client.connection.Connection;
  */
 public class RangeOperation extends AbstractOperation {
 
+    private static final int SAMPLES_PER_SPLIT = 16;
+    //
     private final String bucket;
     private final String comparator;
     private volatile String fromKey;
@@ -33,6 +38,10 @@ public class RangeOperation extends AbstractOperation {
     private volatile String predicate;
     private volatile int limit;
     private volatile long timeToLive;
+    private volatile boolean lazy;
+    private volatile long spillThreshold;
+    private volatile boolean offHeap;
+    private volatile Set<String> fields;
 
     RangeOperation(Connection connection, String bucket) {
         this(connection, bucket, null);
@@ -53,6 +62,10 @@ public class RangeOperation extends AbstractOperation {
         this.limit = other.limit;
         this.predicate = other.predicate;
         this.timeToLive = other.timeToLive;
+        this.lazy = other.lazy;
+        this.spillThreshold = other.spillThreshold;
+        this.offHeap = other.offHeap;
+        this.fields = other.fields;
     }
 
     /**
@@ -112,6 +125,59 @@ public class RangeOperation extends AbstractOperation {
         return newInstance;
     }
 
+    /**
+     * Specifies to retrieve values as {@link LazyValues}, deserializing each value
+     * only when first accessed rather than when the response is read.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     */
+    public RangeOperation lazy() {
+        checkNotProjected();
+        RangeOperation newInstance = new RangeOperation(this);
+        newInstance.lazy = true;
+        return newInstance;
+    }
+
+    /**
+     * Specifies the max size in bytes of values to hold on the heap: bigger results are spilled
+     * to a temporary memory-mapped file as {@link SpilledValues}, and deserialized on access.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     *
+     * @param spillThreshold The max size in bytes of values to hold on the heap.
+     */
+    public RangeOperation spillOver(long spillThreshold) {
+        checkNotProjected();
+        RangeOperation newInstance = new RangeOperation(this);
+        newInstance.spillThreshold = spillThreshold;
+        return newInstance;
+    }
+
+    /**
+     * Specifies to retrieve values as {@link OffHeapValues}, holding them in off-heap memory
+     * and deserializing them on access: returned values must be closed in order to free memory.<br>
+     * It cannot be combined with {@link #project(Set)}.
+     */
+    public RangeOperation offHeap() {
+        checkNotProjected();
+        RangeOperation newInstance = new RangeOperation(this);
+        newInstance.offHeap = true;
+        return newInstance;
+    }
+
+    /**
+     * Specifies to only read the given top-level fields of each value, skipping all others.<br>
+     * It cannot be combined with lazy, spilled or off-heap values.
+     *
+     * @param fields The names of the fields to read.
+     */
+    public RangeOperation project(Set<String> fields) {
+        if (fields != null && (lazy || offHeap || spillThreshold > 0)) {
+            throw new IllegalArgumentException("Projected fields cannot be combined with lazy, spilled or off-heap values.");
+        }
+        RangeOperation newInstance = new RangeOperation(this);
+        newInstance.fields = fields;
+        return newInstance;
+    }
+
     /**
      * Executes this RangeOperation and returns values from the specified range
      * selection.
@@ -124,11 +190,119 @@ public class RangeOperation extends AbstractOperation {
     public <T> Values<T> get(Class<T> type) throws TerrastoreClientException {
         return connection.queryByRange(new Context(), type);
     }
-    
+
+    /**
+     * Executes this RangeOperation and returns values from the specified range
+     * selection as a stream, lazily reading them from the server response
+     * as they're consumed.<br>
+     * The returned iterator holds the server connection, so it must be closed
+     * if not fully consumed.
+     *
+     * @param <T> The Java type of the values in the current bucket.
+     * @param type The Java type of the values in the current bucket.
+     * @return A {@link ValuesIterator} over matching keys/values.
+     * @throws TerrastoreClientException If the query fails or is incomplete.
+     */
+    public <T> ValuesIterator<T> stream(Class<T> type) throws TerrastoreClientException {
+        return connection.streamByRange(new Context(), type);
+    }
+
+    /**
+     * Executes this RangeOperation by scanning the range selection one page at a time,
+     * where each page contains at most as many values as specified by the limit-method
+     * (or {@link RangeCursor#DEFAULT_PAGE_SIZE} if no limit is specified).<br>
+     * The next page is prefetched in background while the current one is being consumed;
+     * the returned iterator must be closed if not fully consumed.
+     *
+     * @param <T> The Java type of the values in the current bucket.
+     * @param type The Java type of the values in the current bucket.
+     * @return A {@link RangeCursor} over matching keys/values.
+     */
+    public <T> RangeCursor<T> iterator(Class<T> type) {
+        return new RangeCursor<T>(this, fromKey, limit > 0 ? limit : RangeCursor.DEFAULT_PAGE_SIZE, type);
+    }
+
+    /**
+     * Executes this RangeOperation by splitting the range selection into contiguous sub-ranges
+     * at the given split keys, and concurrently scanning each sub-range one page at a time
+     * (see {@link #iterator(Class)}).<br>
+     * Split keys must be sorted accordingly to the range comparator, and must lie between
+     * the start and end keys of the range.<br>
+     * All sub-ranges are queried through the same connection, hence sent to the host chosen by its
+     * {@link terrastore.client.connection.HostManager} rather than spread among hosts.
+     *
+     * @param <T> The Java type of the values in the current bucket.
+     * @param type The Java type of the values in the current bucket.
+     * @param splitKeys The keys where to split the range selection: each one starts a new sub-range.
+     * @param ordered True for returning values in range order, false for returning them as soon
+     * as they're fetched by any sub-range scan.
+     * @return A {@link ValuesIterator} over matching keys/values.
+     */
+    public <T> ValuesIterator<T> parallelIterator(Class<T> type, List<String> splitKeys, boolean ordered) {
+        return new ParallelRangeScan<T>(this, fromKey, toKey, splitKeys, limit > 0 ? limit : RangeCursor.DEFAULT_PAGE_SIZE, type, ordered);
+    }
+
+    /**
+     * Computes the split keys for approximately dividing the range selection into the given number
+     * of equally sized parts, by sampling keys from the range selection itself.<br>
+     * The range is scanned one page at a time projecting no fields, so values are skipped without being bound,
+     * and keys are sampled at a stride doubled whenever too many are retained: so all keys in range are read,
+     * but only a bounded number of evenly spaced ones is held in memory.
+     *
+     * @param parts The number of parts to divide the range selection into.
+     * @return The sorted list of split keys, to be used with {@link #parallelIterator(Class, List, boolean)}.
+     * @throws TerrastoreClientException If sampling fails.
+     */
+    public List<String> sampleSplitKeys(int parts) throws TerrastoreClientException {
+        int maxSamples = parts * SAMPLES_PER_SPLIT;
+        List<String> samples = new ArrayList<String>(maxSamples * 2);
+        RangeOperation keysOnly = new RangeOperation(this);
+        keysOnly.lazy = false;
+        keysOnly.spillThreshold = 0;
+        keysOnly.offHeap = false;
+        keysOnly.fields = Collections.<String>emptySet();
+        RangeCursor<Object> cursor = new RangeCursor<Object>(keysOnly, fromKey, RangeCursor.DEFAULT_PAGE_SIZE, Object.class);
+        try {
+            long stride = 1;
+            long read = 0;
+            while (cursor.hasNext()) {
+                String key = cursor.next().getKey();
+                if (read++ % stride == 0) {
+                    samples.add(key);
+                    if (samples.size() == maxSamples * 2) {
+                        // Retain every other sample, doubling the stride:
+                        for (int i = 0; i < maxSamples; i++) {
+                            samples.set(i, samples.get(i * 2));
+                        }
+                        samples.subList(maxSamples, samples.size()).clear();
+                        stride *= 2;
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        List<String> splitKeys = new ArrayList<String>(parts);
+        for (int i = 1; i < parts; i++) {
+            int sample = i * samples.size() / parts;
+            // The first sample is the first key in range, which cannot split it:
+            if (sample > 0 && (splitKeys.isEmpty() || !splitKeys.get(splitKeys.size() - 1).equals(samples.get(sample)))) {
+                splitKeys.add(samples.get(sample));
+            }
+        }
+        return splitKeys;
+    }
+
     public Set<String> remove() throws TerrastoreClientException {
         return connection.removeByRange(new Context());
     }
 
+    private void checkNotProjected() {
+        if (fields != null) {
+            throw new IllegalArgumentException("Projected fields cannot be combined with lazy, spilled or off-heap values.");
+        }
+    }
+
     public class Context {
 
         public String getBucket() {
@@ -158,5 +332,21 @@ public class RangeOperation extends AbstractOperation {
         public String getPredicate() {
             return predicate;
         }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public long getSpillThreshold() {
+            return spillThreshold;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public Set<String> getFields() {
+            return fields;
+        }
     }
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import terrastore.client.mapping.DirectBuffers;
+
+/**
+ * {@link Values} implementation whose raw Json values have been spilled to a temporary memory-mapped file,
+ * rather than being held on the heap.<br>
+ * Values are paged in and deserialized on every access, and never cached, so only the compact key index
+ * is actually held on the heap: callers should hold on to accessed values if needing them more than once.<br>
+ * File mappings are released by {@link #close()}, after which values cannot be accessed anymore.
+ *
+ * @author Sergio Bossa
+ */
+public class SpilledValues<T> extends Values<T> implements Closeable {
+
+    private final SpilledMap<T> values;
+    private final long size;
+
+    /**
+     * @param segments The mapped file segments, each one holding whole values.
+     * @param segmentOffsets The file offset of each segment, in ascending order.
+     * @param keys The value keys.
+     * @param offsets The file offset of each value, by key ordinal.
+     * @param lengths The length of each value, by key ordinal.
+     * @param binder The binder to use for deserializing values.
+     * @param size The total size in bytes of spilled values.
+     */
+    public SpilledValues(ByteBuffer[] segments, long[] segmentOffsets, CompactKeySet keys, long[] offsets, int[] lengths, LazyValues.Binder<T> binder, long size) {
+        this(new SpilledMap<T>(segments, segmentOffsets, keys, offsets, lengths, binder), size);
+    }
+
+    private SpilledValues(SpilledMap<T> values, long size) {
+        super(values);
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Get the total size in bytes of spilled values.
+     */
+    public long getSpilledSize() {
+        return size;
+    }
+
+    /**
+     * Release the file mappings held by these values.
+     */
+    @Override
+    public void close() {
+        values.close();
+    }
+
+    private static class SpilledMap<T> extends AbstractMap<String, T> {
+
+        private final ByteBuffer[] segments;
+        private final long[] segmentOffsets;
+        private final CompactKeySet keys;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final LazyValues.Binder<T> binder;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean closed;
+
+        public SpilledMap(ByteBuffer[] segments, long[] segmentOffsets, CompactKeySet keys, long[] offsets, int[] lengths, LazyValues.Binder<T> binder) {
+            this.segments = segments;
+            this.segmentOffsets = segmentOffsets;
+            this.keys = keys;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.binder = binder;
+        }
+
+        @Override
+        public T get(Object key) {
+            int ordinal = keys.ordinalOf(key);
+            return ordinal >= 0 ? bind(ordinal) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(keys);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, T>> entrySet() {
+            return new AbstractSet<Map.Entry<String, T>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, T>> iterator() {
+                    return new Iterator<Map.Entry<String, T>>() {
+
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, T> next() {
+                            if (hasNext()) {
+                                int ordinal = next++;
+                                return new AbstractMap.SimpleImmutableEntry<String, T>(keys.keyAt(ordinal), bind(ordinal));
+                            } else {
+                                throw new NoSuchElementException();
+                            }
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("Cannot remove spilled values.");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    for (ByteBuffer segment : segments) {
+                        DirectBuffers.free(segment);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private T bind(int ordinal) {
+            int segment = Arrays.binarySearch(segmentOffsets, offsets[ordinal]);
+            if (segment < 0) {
+                segment = -segment - 2;
+            }
+            // Prevent mappings from being released while reading:
+            lock.readLock().lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Spilled values have been closed.");
+                }
+                return binder.bind(segments[segment], (int) (offsets[ordinal] - segmentOffsets[segment]), lengths[ordinal]);
+            } catch (IOException ex) {
+                throw new TerrastoreClientException("Could not read value for key: " + keys.keyAt(ordinal), ex);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Iterator over key/value entries which are incrementally retrieved from the Terrastore server.<br>
+ * Entries are returned in the order they are provided by the server; resources held by the iterator
+ * are automatically released once the last entry has been consumed, otherwise the iterator must be
+ * explicitly closed.
+ *
+ * @author Sergio Bossa
+ */
+public interface ValuesIterator<T> extends Iterator<Map.Entry<String, T>> {
+
+    /**
+     * Releases all resources held by this iterator: subsequent calls to {@link #hasNext()} will return false.
+     */
+    public void close();
+}
@@ -27,6 +27,10 @@ public class ValuesOperation extends AbstractOperation {
     private final String bucket;
 
     private volatile int limit;
+    private volatile String checkpoint;
+    private volatile boolean lazy;
+    private volatile long spillThreshold;
+    private volatile boolean offHeap;
 
     ValuesOperation(Connection connection, String bucket) {
         super(connection);
@@ -40,6 +44,10 @@ public class ValuesOperation extends AbstractOperation {
         super(other.connection);
         this.bucket = other.bucket;
         this.limit = other.limit;
+        this.checkpoint = other.checkpoint;
+        this.lazy = other.lazy;
+        this.spillThreshold = other.spillThreshold;
+        this.offHeap = other.offHeap;
     }
 
     /**
@@ -54,6 +62,38 @@ public class ValuesOperation extends AbstractOperation {
         return newInstance;
     }
 
+    /**
+     * Specifies to retrieve values as {@link LazyValues}, deserializing each value
+     * only when first accessed rather than when the response is read.
+     */
+    public ValuesOperation lazy() {
+        ValuesOperation newInstance = new ValuesOperation(this);
+        newInstance.lazy = true;
+        return newInstance;
+    }
+
+    /**
+     * Specifies the max size in bytes of values to hold on the heap: bigger results are spilled
+     * to a temporary memory-mapped file as {@link SpilledValues}, and deserialized on access.
+     *
+     * @param spillThreshold The max size in bytes of values to hold on the heap.
+     */
+    public ValuesOperation spillOver(long spillThreshold) {
+        ValuesOperation newInstance = new ValuesOperation(this);
+        newInstance.spillThreshold = spillThreshold;
+        return newInstance;
+    }
+
+    /**
+     * Specifies to retrieve values as {@link OffHeapValues}, holding them in off-heap memory
+     * and deserializing them on access: returned values must be closed in order to free memory.
+     */
+    public ValuesOperation offHeap() {
+        ValuesOperation newInstance = new ValuesOperation(this);
+        newInstance.offHeap = true;
+        return newInstance;
+    }
+
     /**
      * Retrieves all values contained in the current bucket, or as many
      * as permitted by the limit-method.
@@ -67,6 +107,40 @@ public class ValuesOperation extends AbstractOperation {
         return connection.getAllValues(new Context(), type);
     }
 
+    /**
+     * Specifies the checkpoint key from which to resume an interrupted iteration,
+     * as returned by {@link RangeCursor#getCheckpoint()}.
+     *
+     * @param checkpoint The key of the last value consumed by the interrupted iteration.
+     */
+    public ValuesOperation resumeFrom(String checkpoint) {
+        ValuesOperation newInstance = new ValuesOperation(this);
+        newInstance.checkpoint = checkpoint;
+        return newInstance;
+    }
+
+    /**
+     * Iterates over all values contained in the current bucket, in lexical key order,
+     * by retrieving them in chunks whose size is specified by the limit-method
+     * (or {@link RangeCursor#DEFAULT_PAGE_SIZE} if no limit is specified), so that no
+     * more than two chunks are held in memory.<br>
+     * Iteration starts after the checkpoint key specified by the resumeFrom-method, if any;
+     * the returned iterator must be closed if not fully consumed.
+     *
+     * @param <T> The Java type to deserialize the values to.
+     * @param type The Java class to deserialize the values to.
+     * @return A {@link RangeCursor} over all keys and values.
+     */
+    public <T> RangeCursor<T> iterator(Class<T> type) {
+        RangeOperation range = new RangeOperation(connection, bucket);
+        int chunkSize = limit > 0 ? limit : RangeCursor.DEFAULT_PAGE_SIZE;
+        if (checkpoint != null) {
+            return new RangeCursor<T>(range, checkpoint, true, chunkSize, type);
+        } else {
+            return new RangeCursor<T>(range, "", false, chunkSize, type);
+        }
+    }
+
     public class Context {
 
         public String getBucket() {
@@ -76,5 +150,17 @@ public class ValuesOperation extends AbstractOperation {
         public int getLimit() {
             return limit;
         }
+
+        public boolean isLazy() {
+            return lazy;
+        }
+
+        public long getSpillThreshold() {
+            return spillThreshold;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
     }
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+/**
+ * Bucket and key pair identifying a cached value.
+ *
+ * @author Sergio Bossa
+ */
+class CacheKey {
+
+    private final String bucket;
+    private final String key;
+
+    public CacheKey(String bucket, String key) {
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof CacheKey) {
+            CacheKey other = (CacheKey) obj;
+            return bucket.equals(other.bucket) && key.equals(other.key);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bucket.hashCode() + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return bucket + "/" + key;
+    }
+}
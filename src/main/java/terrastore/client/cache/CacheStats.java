@@ -0,0 +1,142 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of cache statistics.<br>
+ * Hits, misses and loads count requests as seen by callers, evictions count entries removed by the cache,
+ * and weights estimate the size in bytes of cached values, when known.
+ *
+ * @author Sergio Bossa
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final Map<EvictionCause, Long> evictionCounts;
+    private final Map<String, Long> weightByBucket;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+            Map<EvictionCause, Long> evictionCounts, Map<String, Long> weightByBucket) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCounts = Collections.unmodifiableMap(evictionCounts);
+        this.weightByBucket = Collections.unmodifiableMap(weightByBucket);
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the ratio of requests served by the cache, or 1 if there have been no requests.
+     */
+    public double getHitRatio() {
+        long requests = hitCount + missCount;
+        return requests > 0 ? (double) hitCount / requests : 1.0;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Get the total time spent loading values from the server, in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Get the average time spent loading a value from the server, in nanoseconds.
+     */
+    public double getAverageLoadTime() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads > 0 ? (double) totalLoadTime / loads : 0.0;
+    }
+
+    /**
+     * Get the number of entries evicted because of the given cause.
+     */
+    public long getEvictionCount(EvictionCause cause) {
+        Long count = evictionCounts.get(cause);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Get the number of evicted entries, by eviction cause.
+     */
+    public Map<EvictionCause, Long> getEvictionCounts() {
+        return evictionCounts;
+    }
+
+    /**
+     * Get the estimated size in bytes of cached values, by bucket: empty if the cache doesn't weigh its values.
+     */
+    public Map<String, Long> getWeightByBucket() {
+        return weightByBucket;
+    }
+
+    /**
+     * Get a copy of these stats, whose hits, misses and loads are replaced by the given ones.
+     */
+    CacheStats withRequests(CacheStats requests) {
+        return new CacheStats(requests.hitCount, requests.missCount, requests.loadSuccessCount, requests.loadFailureCount, requests.totalLoadTime,
+                evictionCounts, weightByBucket);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", loadSuccesses=" + loadSuccessCount + ", loadFailures=" + loadFailureCount
+                + ", totalLoadTime=" + totalLoadTime + ", evictions=" + evictionCounts + ", weightByBucket=" + weightByBucket + "}";
+    }
+
+    /**
+     * Cause of entries eviction.
+     */
+    public static enum EvictionCause {
+
+        /**
+         * The entry has been evicted to make room for others.
+         */
+        SIZE,
+        /**
+         * The entry has expired.
+         */
+        EXPIRED,
+        /**
+         * The entry has been invalidated because of a write, or of an explicit invalidation.
+         */
+        INVALIDATED;
+    }
+}
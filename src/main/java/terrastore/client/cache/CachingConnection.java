@@ -0,0 +1,552 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import terrastore.client.BackupOperation;
+import terrastore.client.BulkOperation;
+import terrastore.client.ClusterStats;
+import terrastore.client.ConditionalOperation;
+import terrastore.client.KeyOperation;
+import terrastore.client.LazyValues;
+import terrastore.client.PredicateOperation;
+import terrastore.client.RangeOperation;
+import terrastore.client.TerrastoreClientException;
+import terrastore.client.UpdateOperation;
+import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
+import terrastore.client.ValuesOperation;
+import terrastore.client.connection.Connection;
+import terrastore.client.connection.ErrorMessage;
+import terrastore.client.connection.NoSuchKeyException;
+import terrastore.client.mapreduce.MapReduceQuery;
+import terrastore.client.mapreduce.MapReduceOperation;
+import terrastore.client.merge.MergeOperation;
+
+/**
+ * {@link Connection} decorator caching values read by key from the configured buckets, as well as keys found missing,
+ * and invalidating or updating them on writes made through this connection.<br>
+ * Projected and conditional reads are never cached, nor are values read as {@link ByteBuffer}s, whose position is shared.<br>
+ * Values are only cached for, and served to, reads of their exact type: reads by interface or supertype, such as
+ * {@link java.util.Map} or {@link Object}, are never cached, as their values may not match any other read type.<br>
+ * Values loaded while concurrently written through any connection sharing the same caches are not cached.<br>
+ * Range, predicate and map-reduce query results are cached too, but not invalidated by writes other than bucket
+ * clearing and backup import: as with server-side range snapshots, they may be stale up to their time to live.<br>
+ * Cached query results are shared by all callers, so they are returned as unmodifiable values: map-reduce results
+ * are hence only cached when read as {@link java.util.Map}, {@link java.util.List}, {@link java.util.Set},
+ * {@link java.util.Collection}, {@link Object} or immutable scalar types, and copied into unmodifiable collections.<br>
+ * Streamed, spilled and off-heap query results are never cached.
+ *
+ * @author Sergio Bossa
+ */
+public class CachingConnection implements Connection {
+
+    private static final Set<Class<?>> FREEZABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            Map.class, List.class, Set.class, Collection.class, Object.class,
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class));
+    //
+    private final Connection connection;
+    private final KeyCache keyCache;
+    private final NegativeCache negativeCache;
+    private final ResultCache resultCache;
+    private final MetadataCache metadataCache;
+    private final Refresher refresher;
+    private final Set<String> buckets;
+    private final StatsCounter keyRequests;
+    private final StatsCounter negativeRequests;
+    private final KeyVersions keyVersions;
+
+    CachingConnection(Connection connection, CachingConnectionFactory.Context context) {
+        this.connection = connection;
+        this.keyCache = context.getKeyCache();
+        this.negativeCache = context.getNegativeCache();
+        this.resultCache = context.getResultCache();
+        this.metadataCache = context.getMetadataCache();
+        if (keyCache != null && context.getRefreshAfter() > 0) {
+            this.refresher = new Refresher(connection, keyCache, context.getKeyVersions(), context.getRefreshAfter(), BackgroundExecutor.get(), context.getKeyRequests());
+        } else if (keyCache instanceof TieredKeyCache) {
+            // Only values restored from disk are infinitely old, so they're the only ones to refresh:
+            this.refresher = new Refresher(connection, keyCache, context.getKeyVersions(), Long.MAX_VALUE, BackgroundExecutor.get(), context.getKeyRequests());
+        } else {
+            this.refresher = null;
+        }
+        this.buckets = context.getBuckets();
+        this.keyRequests = context.getKeyRequests();
+        this.negativeRequests = context.getNegativeRequests();
+        this.keyVersions = context.getKeyVersions();
+    }
+
+    @Override
+    public ClusterStats getClusterStats() throws TerrastoreClientException {
+        if (metadataCache != null) {
+            return metadataCache.getClusterStats(connection);
+        } else {
+            return connection.getClusterStats();
+        }
+    }
+
+    @Override
+    public void clearBucket(String bucket) throws TerrastoreClientException {
+        try {
+            connection.clearBucket(bucket);
+        } finally {
+            invalidate(bucket);
+            if (metadataCache != null) {
+                metadataCache.invalidateBuckets();
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getBuckets() throws TerrastoreClientException {
+        if (metadataCache != null) {
+            return metadataCache.getBuckets(connection);
+        } else {
+            return connection.getBuckets();
+        }
+    }
+
+    @Override
+    public <T> void putValue(KeyOperation.Context context, T value) throws TerrastoreClientException {
+        try {
+            connection.putValue(context, value);
+        } finally {
+            invalidate(context.getBucket(), context.getKey());
+        }
+    }
+
+    @Override
+    public <T> void putValue(ConditionalOperation.Context context, T value) throws TerrastoreClientException {
+        try {
+            connection.putValue(context, value);
+        } finally {
+            invalidate(context.getBucket(), context.getKey());
+        }
+    }
+
+    @Override
+    public void removeValue(KeyOperation.Context context) throws TerrastoreClientException {
+        try {
+            connection.removeValue(context);
+        } finally {
+            invalidate(context.getBucket(), context.getKey());
+        }
+    }
+
+    @Override
+    public <T> T getValue(KeyOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        if (isKnownMissing(context.getBucket(), context.getKey())) {
+            throw new NoSuchKeyException(new ErrorMessage("Key not found: " + context.getKey(), 404));
+        } else if (isCacheable(context, type)) {
+            T value = getCached(context.getBucket(), context.getKey(), type);
+            if (value == null) {
+                long version = keyVersions.get(context.getBucket(), context.getKey());
+                long started = System.nanoTime();
+                boolean loaded = false;
+                try {
+                    value = load(context, type, version);
+                    loaded = true;
+                } catch (NoSuchKeyException ex) {
+                    // Missing keys are a successful load anyway:
+                    loaded = true;
+                    throw ex;
+                } finally {
+                    recordLoad(started, loaded);
+                }
+                putCached(context.getBucket(), context.getKey(), type, value, version);
+            }
+            return value;
+        } else {
+            return load(context, type, keyVersions.get(context.getBucket(), context.getKey()));
+        }
+    }
+
+    @Override
+    public <T> T getValue(ConditionalOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.getValue(context, type);
+    }
+
+    @Override
+    public <T> T getValueIfPresent(KeyOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        if (isKnownMissing(context.getBucket(), context.getKey())) {
+            return null;
+        } else if (isCacheable(context, type)) {
+            T value = getCached(context.getBucket(), context.getKey(), type);
+            if (value == null) {
+                long version = keyVersions.get(context.getBucket(), context.getKey());
+                long started = System.nanoTime();
+                boolean loaded = false;
+                try {
+                    value = loadIfPresent(context, type, version);
+                    loaded = true;
+                } finally {
+                    recordLoad(started, loaded);
+                }
+                if (value != null) {
+                    putCached(context.getBucket(), context.getKey(), type, value, version);
+                }
+            }
+            return value;
+        } else {
+            return loadIfPresent(context, type, keyVersions.get(context.getBucket(), context.getKey()));
+        }
+    }
+
+    @Override
+    public <T> T getValueIfPresent(ConditionalOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.getValueIfPresent(context, type);
+    }
+
+    @Override
+    public boolean exists(KeyOperation.Context context) throws TerrastoreClientException {
+        if (isKnownMissing(context.getBucket(), context.getKey())) {
+            return false;
+        } else if (isCacheable(context, Object.class) && keyCache.get(context.getBucket(), context.getKey()) != null) {
+            return true;
+        } else {
+            long version = keyVersions.get(context.getBucket(), context.getKey());
+            boolean exists = connection.exists(context);
+            if (!exists) {
+                putMissing(context.getBucket(), context.getKey(), version);
+            }
+            return exists;
+        }
+    }
+
+    @Override
+    public boolean exists(ConditionalOperation.Context context) throws TerrastoreClientException {
+        return connection.exists(context);
+    }
+
+    @Override
+    public <T> Values<T> getAllValues(ValuesOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.getAllValues(context, type);
+    }
+
+    @Override
+    public <T> Values<T> queryByRange(final RangeOperation.Context context, final Class<T> type) throws TerrastoreClientException {
+        long timeToLive = TimeUnit.MILLISECONDS.toNanos(context.getTimeToLive());
+        if (isCacheable(context.getBucket(), context.isOffHeap(), context.getSpillThreshold(), timeToLive)) {
+            QueryKey key = new QueryKey(context.getBucket(), "range", context.getStartKey(), context.getEndKey(), context.getLimit(),
+                    context.getComparator(), context.getPredicate(), context.getFields(), context.isLazy(), type);
+            return resultCache.get(key, timeToLive, new Callable<Values<T>>() {
+
+                @Override
+                public Values<T> call() {
+                    return unmodifiable(connection.queryByRange(context, type));
+                }
+            });
+        } else {
+            return connection.queryByRange(context, type);
+        }
+    }
+
+    @Override
+    public <T> ValuesIterator<T> streamByRange(RangeOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.streamByRange(context, type);
+    }
+
+    @Override
+    public Set<String> removeByRange(RangeOperation.Context context) throws TerrastoreClientException {
+        Set<String> removed = null;
+        try {
+            removed = connection.removeByRange(context);
+            return removed;
+        } finally {
+            if (removed != null) {
+                for (String key : removed) {
+                    invalidate(context.getBucket(), key);
+                }
+            } else {
+                // Unknown outcome, so the whole bucket may have been affected:
+                invalidate(context.getBucket());
+            }
+        }
+    }
+
+    @Override
+    public <T> Values<T> queryByPredicate(final PredicateOperation.Context context, final Class<T> type) throws TerrastoreClientException {
+        long timeToLive = resultCache != null ? resultCache.getDefaultTimeToLive() : 0;
+        if (isCacheable(context.getBucket(), context.isOffHeap(), context.getSpillThreshold(), timeToLive)) {
+            QueryKey key = new QueryKey(context.getBucket(), "predicate", context.getPredicate(), context.getFields(), context.isLazy(), type);
+            return resultCache.get(key, timeToLive, new Callable<Values<T>>() {
+
+                @Override
+                public Values<T> call() {
+                    return unmodifiable(connection.queryByPredicate(context, type));
+                }
+            });
+        } else {
+            return connection.queryByPredicate(context, type);
+        }
+    }
+
+    @Override
+    public <T> ValuesIterator<T> streamByPredicate(PredicateOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.streamByPredicate(context, type);
+    }
+
+    @Override
+    public <T> T queryByMapReduce(final MapReduceOperation.Context context, final Class<T> returnType) throws TerrastoreClientException {
+        long timeToLive = resultCache != null ? resultCache.getDefaultTimeToLive() : 0;
+        MapReduceQuery.Range range = context.getQuery().getRange();
+        if (range != null && range.getTimeToLive() != null && range.getTimeToLive() > 0) {
+            timeToLive = TimeUnit.MILLISECONDS.toNanos(range.getTimeToLive());
+        }
+        if (isCacheable(context.getBucket(), false, 0, timeToLive) && FREEZABLE_TYPES.contains(returnType)) {
+            // As with range keys, the time to live is left out, because each caller checks freshness by its own:
+            QueryKey key = new QueryKey(context.getBucket(), "mapReduce",
+                    range != null ? range.getStartKey() : null, range != null ? range.getEndKey() : null, range != null ? range.getComparator() : null,
+                    context.getQuery().getTask(), returnType);
+            return resultCache.get(key, timeToLive, new Callable<T>() {
+
+                @Override
+                public T call() {
+                    return returnType.cast(freeze(connection.queryByMapReduce(context, returnType)));
+                }
+            });
+        } else {
+            return connection.queryByMapReduce(context, returnType);
+        }
+    }
+
+    @Override
+    public void exportBackup(BackupOperation.Context context) throws TerrastoreClientException {
+        connection.exportBackup(context);
+    }
+
+    @Override
+    public void importBackup(BackupOperation.Context context) throws TerrastoreClientException {
+        try {
+            connection.importBackup(context);
+        } finally {
+            invalidate(context.getBucket());
+        }
+    }
+
+    @Override
+    public <T> T executeUpdate(UpdateOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        T updated = null;
+        try {
+            updated = connection.executeUpdate(context, type);
+            return updated;
+        } finally {
+            update(context.getBucket(), context.getKey(), updated);
+        }
+    }
+
+    @Override
+    public <T> T executeMerge(MergeOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        T merged = null;
+        try {
+            merged = connection.executeMerge(context, type);
+            return merged;
+        } finally {
+            update(context.getBucket(), context.getKey(), merged);
+        }
+    }
+
+    @Override
+    public Set<String> bulkPut(BulkOperation.Context context) throws TerrastoreClientException {
+        try {
+            return connection.bulkPut(context);
+        } finally {
+            for (Object key : context.getValues().keySet()) {
+                invalidate(context.getBucket(), key.toString());
+            }
+        }
+    }
+
+    @Override
+    public <T> Values<T> bulkGet(BulkOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.bulkGet(context, type);
+    }
+
+    @Override
+    public <T> ValuesIterator<T> streamBulkGet(BulkOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        return connection.streamBulkGet(context, type);
+    }
+
+    private <T> T load(KeyOperation.Context context, Class<T> type, long version) {
+        try {
+            return connection.getValue(context, type);
+        } catch (NoSuchKeyException ex) {
+            putMissing(context.getBucket(), context.getKey(), version);
+            throw ex;
+        }
+    }
+
+    private <T> T loadIfPresent(KeyOperation.Context context, Class<T> type, long version) {
+        T value = connection.getValueIfPresent(context, type);
+        if (value == null) {
+            putMissing(context.getBucket(), context.getKey(), version);
+        }
+        return value;
+    }
+
+    private <T> Values<T> unmodifiable(Values<T> values) {
+        // Lazy values can't be modified anyways, and must be kept as they are:
+        if (values instanceof LazyValues) {
+            return values;
+        } else {
+            return new Values<T>(Collections.unmodifiableMap(values));
+        }
+    }
+
+    private Object freeze(Object result) {
+        // Deeply copy Json collections, leaving immutable scalars as they are:
+        if (result instanceof Map) {
+            Map<Object, Object> frozen = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+                frozen.put(entry.getKey(), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(frozen);
+        } else if (result instanceof Set) {
+            Set<Object> frozen = new LinkedHashSet<Object>();
+            for (Object element : (Set<?>) result) {
+                frozen.add(freeze(element));
+            }
+            return Collections.unmodifiableSet(frozen);
+        } else if (result instanceof Collection) {
+            List<Object> frozen = new ArrayList<Object>();
+            for (Object element : (Collection<?>) result) {
+                frozen.add(freeze(element));
+            }
+            return Collections.unmodifiableList(frozen);
+        } else {
+            return result;
+        }
+    }
+
+    private boolean isCacheable(String bucket, boolean offHeap, long spillThreshold, long timeToLive) {
+        return resultCache != null && !offHeap && spillThreshold <= 0 && timeToLive > 0 && buckets.contains(bucket);
+    }
+
+    private boolean isKnownMissing(String bucket, String key) {
+        if (negativeCache != null && buckets.contains(bucket)) {
+            if (negativeCache.isMissing(bucket, key)) {
+                negativeRequests.recordHit();
+                return true;
+            } else {
+                negativeRequests.recordMiss();
+                return false;
+            }
+        } else {
+            return false;
+        }
+    }
+
+    private void putMissing(String bucket, String key, long version) {
+        // Keys written meanwhile must not be recorded as missing:
+        if (negativeCache != null && buckets.contains(bucket) && keyVersions.isCurrent(bucket, key, version)) {
+            negativeCache.putMissing(bucket, key);
+            if (!keyVersions.isCurrent(bucket, key, version)) {
+                negativeCache.invalidate(bucket, key);
+            }
+        }
+    }
+
+    private boolean isCacheable(KeyOperation.Context context, Class<?> type) {
+        return keyCache != null && context.getFields() == null && buckets.contains(context.getBucket()) && !ByteBuffer.class.isAssignableFrom(type);
+    }
+
+    private <T> T getCached(String bucket, String key, Class<T> type) {
+        Object cached = keyCache.get(bucket, key);
+        // Values cached under a different type are ignored, and will be replaced:
+        if (cached != null && cached.getClass() == type) {
+            if (refresher != null) {
+                refresher.onHit(bucket, key, type);
+            }
+            keyRequests.recordHit();
+            return type.cast(cached);
+        } else {
+            keyRequests.recordMiss();
+            return null;
+        }
+    }
+
+    private void putCached(String bucket, String key, Class<?> type, Object value, long version) {
+        if (value.getClass() == type && keyVersions.isCurrent(bucket, key, version)) {
+            keyCache.put(bucket, key, value);
+            // Invalidations racing with the put above must not be lost:
+            if (!keyVersions.isCurrent(bucket, key, version)) {
+                keyCache.invalidate(bucket, key);
+            }
+        }
+    }
+
+    private void recordLoad(long started, boolean succeeded) {
+        if (succeeded) {
+            keyRequests.recordLoadSuccess(System.nanoTime() - started);
+        } else {
+            keyRequests.recordLoadFailure(System.nanoTime() - started);
+        }
+    }
+
+    private void update(String bucket, String key, Object value) {
+        if (keyCache != null && value != null && buckets.contains(bucket)) {
+            keyVersions.invalidate(bucket, key);
+            if (negativeCache != null) {
+                negativeCache.invalidate(bucket, key);
+            }
+            keyCache.put(bucket, key, value);
+        } else {
+            invalidate(bucket, key);
+        }
+    }
+
+    private void invalidate(String bucket, String key) {
+        if (buckets.contains(bucket)) {
+            keyVersions.invalidate(bucket, key);
+            if (keyCache != null) {
+                keyCache.invalidate(bucket, key);
+            }
+            if (negativeCache != null) {
+                negativeCache.invalidate(bucket, key);
+            }
+        }
+    }
+
+    private void invalidate(String bucket) {
+        if (buckets.contains(bucket)) {
+            keyVersions.invalidateAll();
+            if (keyCache != null) {
+                keyCache.invalidate(bucket);
+            }
+            if (resultCache != null) {
+                resultCache.invalidate(bucket);
+            }
+            if (negativeCache != null) {
+                negativeCache.invalidate(bucket);
+            }
+        }
+    }
+}
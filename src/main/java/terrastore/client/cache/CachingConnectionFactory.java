@@ -0,0 +1,227 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import terrastore.client.connection.Connection;
+import terrastore.client.connection.ConnectionFactory;
+import terrastore.client.connection.HostManager;
+import terrastore.client.connection.TerrastoreConnectionException;
+import terrastore.client.mapping.JsonObjectDescriptor;
+
+/**
+ * {@link ConnectionFactory} decorating connections made by another factory with client-side caching
+ * of values read from the configured buckets.<br>
+ * Values written through the same connection are invalidated or updated, but values written by other
+ * clients are only seen after the cached ones expire or get evicted.<br>
+ * The same caches are shared by all connections made by this factory.<br>
+ * Caching connection factory instances are immutable.
+ *
+ * @author Sergio Bossa
+ */
+public class CachingConnectionFactory implements ConnectionFactory {
+
+    private final ConnectionFactory connectionFactory;
+    private volatile KeyCache keyCache;
+    private volatile NegativeCache negativeCache;
+    private volatile ResultCache resultCache;
+    private volatile MetadataCache metadataCache;
+    private volatile long refreshAfter;
+    private volatile Set<String> buckets = Collections.emptySet();
+    private volatile StatsCounter keyRequests = new StatsCounter();
+    private volatile StatsCounter negativeRequests = new StatsCounter();
+    private final KeyVersions keyVersions;
+
+    public CachingConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+        this.keyVersions = new KeyVersions();
+    }
+
+    CachingConnectionFactory(CachingConnectionFactory other) {
+        this.connectionFactory = other.connectionFactory;
+        this.keyCache = other.keyCache;
+        this.negativeCache = other.negativeCache;
+        this.resultCache = other.resultCache;
+        this.metadataCache = other.metadataCache;
+        this.refreshAfter = other.refreshAfter;
+        this.buckets = other.buckets;
+        this.keyRequests = other.keyRequests;
+        this.negativeRequests = other.negativeRequests;
+        this.keyVersions = other.keyVersions;
+    }
+
+    /**
+     * Specifies the {@link KeyCache} to use for caching values read by key.
+     *
+     * @param keyCache The key cache.
+     */
+    public CachingConnectionFactory keyCache(KeyCache keyCache) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.keyCache = keyCache;
+        newInstance.keyRequests = new StatsCounter();
+        return newInstance;
+    }
+
+    /**
+     * Specifies the {@link NegativeCache} to use for caching keys found missing.
+     *
+     * @param negativeCache The negative cache.
+     */
+    public CachingConnectionFactory negativeCache(NegativeCache negativeCache) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.negativeCache = negativeCache;
+        newInstance.negativeRequests = new StatsCounter();
+        return newInstance;
+    }
+
+    /**
+     * Specifies the age after which cached values read by key get asynchronously refreshed when accessed,
+     * while still serving the current value: it should be a little less than the {@link KeyCache} time to live,
+     * so that frequently accessed values never expire.<br>
+     * Values due for refresh at the same time are reloaded through a single bulk get.
+     *
+     * @param refreshAfter The age after which values must be refreshed.
+     * @param unit The age unit.
+     */
+    public CachingConnectionFactory refreshAhead(long refreshAfter, TimeUnit unit) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.refreshAfter = unit.toNanos(refreshAfter);
+        return newInstance;
+    }
+
+    /**
+     * Specifies the {@link ResultCache} to use for caching range, predicate and map-reduce query results.
+     *
+     * @param resultCache The result cache.
+     */
+    public CachingConnectionFactory resultCache(ResultCache resultCache) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.resultCache = resultCache;
+        return newInstance;
+    }
+
+    /**
+     * Specifies the {@link MetadataCache} to use for caching bucket names and cluster stats.
+     *
+     * @param metadataCache The metadata cache.
+     */
+    public CachingConnectionFactory metadataCache(MetadataCache metadataCache) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.metadataCache = metadataCache;
+        return newInstance;
+    }
+
+    /**
+     * Specifies the buckets whose values, missing keys and query results must be cached: other buckets are never cached.
+     *
+     * @param buckets The names of the buckets to cache.
+     */
+    public CachingConnectionFactory buckets(String... buckets) {
+        CachingConnectionFactory newInstance = new CachingConnectionFactory(this);
+        newInstance.buckets = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(buckets)));
+        return newInstance;
+    }
+
+    /**
+     * Get a snapshot of the {@link KeyCache} statistics, whose hits, misses and loads count key reads
+     * through connections made by this factory, including refresh-ahead bulk reloads.
+     *
+     * @return The key cache statistics, or null if no key cache is configured.
+     */
+    public CacheStats getKeyStats() {
+        if (keyCache != null) {
+            return keyCache.getStats().withRequests(keyRequests.snapshot(Collections.<String, Long>emptyMap()));
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get a snapshot of the {@link NegativeCache} statistics, counting key reads answered as missing (hits)
+     * or not (misses).
+     *
+     * @return The negative cache statistics, or null if no negative cache is configured.
+     */
+    public CacheStats getNegativeStats() {
+        if (negativeCache != null) {
+            return negativeRequests.snapshot(Collections.<String, Long>emptyMap());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get a snapshot of the {@link ResultCache} statistics, covering range, predicate and map-reduce queries.
+     *
+     * @return The result cache statistics, or null if no result cache is configured.
+     */
+    public CacheStats getResultStats() {
+        if (resultCache != null) {
+            return resultCache.getStats();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Connection makeConnection(HostManager hostManager, List<JsonObjectDescriptor<?>> descriptors) throws TerrastoreConnectionException {
+        return new CachingConnection(connectionFactory.makeConnection(hostManager, descriptors), new Context());
+    }
+
+    public class Context {
+
+        public KeyCache getKeyCache() {
+            return keyCache;
+        }
+
+        public NegativeCache getNegativeCache() {
+            return negativeCache;
+        }
+
+        public ResultCache getResultCache() {
+            return resultCache;
+        }
+
+        public long getRefreshAfter() {
+            return refreshAfter;
+        }
+
+        public MetadataCache getMetadataCache() {
+            return metadataCache;
+        }
+
+        public Set<String> getBuckets() {
+            return buckets;
+        }
+
+        StatsCounter getKeyRequests() {
+            return keyRequests;
+        }
+
+        StatsCounter getNegativeRequests() {
+            return negativeRequests;
+        }
+
+        KeyVersions getKeyVersions() {
+            return keyVersions;
+        }
+    }
+}
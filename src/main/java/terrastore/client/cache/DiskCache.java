@@ -0,0 +1,432 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.client.mapping.JsonMapperRegistry;
+import terrastore.client.mapping.JsonObjectDescriptor;
+
+/**
+ * {@link KeyCache} implementation persisting values as Json documents into a local memory-mapped file,
+ * so that they survive restarts.<br>
+ * The file is a log of records, each one holding bucket, key, value type and serialized value:
+ * records headers make the on-disk index, which is scanned at startup without reading values.<br>
+ * Values restored from a previous run are reported as infinitely old by {@link #getAge(String, String)},
+ * so that they get revalidated on first access, while being served straight away: see {@link TieredKeyCache}.<br>
+ * When the file is full, live records are compacted, and the oldest ones dropped if still needed.<br>
+ * The file is exclusively locked while open, so that it can't be shared by different caches or processes;
+ * corrupted records found at startup are discarded along with all the following ones.<br>
+ * Caching on disk is best effort: values that can't be serialized or deserialized are just not cached.
+ *
+ * @author Sergio Bossa
+ */
+public class DiskCache implements KeyCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DiskCache.class);
+    private static final int MAGIC = 0x54445243;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final byte LIVE = 1;
+    private static final byte DEAD = 0;
+    private static final long RESTORED = Long.MIN_VALUE;
+    //
+    private final ObjectMapper mapper;
+    private final RandomAccessFile file;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final Map<CacheKey, Entry> entries = new HashMap<CacheKey, Entry>();
+    private final Map<String, Long> weightByBucket = new HashMap<String, Long>();
+    private final StatsCounter stats = new StatsCounter();
+    private int end;
+    private int liveBytes;
+    private boolean closed;
+
+    /**
+     * @param file The file to persist values to, created if not existing.
+     * @param capacity The file size in bytes.
+     */
+    public DiskCache(File file, int capacity) throws IOException {
+        this(file, capacity, new JsonMapperRegistry(new ArrayList<JsonObjectDescriptor<?>>(0)));
+    }
+
+    /**
+     * @param file The file to persist values to, created if not existing, and reset if not written with the same capacity.
+     * @param capacity The file size in bytes.
+     * @param mapperRegistry The {@link JsonMapperRegistry} used for serializing values, which should be the same one
+     * used by connections.
+     * @throws IOException If the file can't be opened, or is already in use by another cache.
+     */
+    public DiskCache(File file, int capacity, JsonMapperRegistry mapperRegistry) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Capacity must be greater than " + HEADER_SIZE + ": " + capacity);
+        }
+        this.mapper = mapperRegistry.getMapper();
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            this.lock = tryLock(this.file);
+            if (lock == null) {
+                throw new IOException("Cache file already in use: " + file);
+            }
+            boolean reset = this.file.length() != capacity;
+            this.file.setLength(capacity);
+            this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (reset || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                reset();
+            } else {
+                restore();
+            }
+        } catch (IOException ex) {
+            this.file.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            this.file.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Object get(String bucket, String key) {
+        String type = null;
+        byte[] value = null;
+        synchronized (this) {
+            Entry entry = entries.get(new CacheKey(bucket, key));
+            if (entry == null || closed) {
+                stats.recordMiss();
+                return null;
+            }
+            stats.recordHit();
+            ByteBuffer record = record(entry);
+            skipString(record);
+            skipString(record);
+            type = readString(record);
+            value = new byte[record.remaining()];
+            record.get(value);
+        }
+        // Deserialize out of the lock, as it is the most expensive part:
+        try {
+            // Classes named by the file are not initialized, so that a corrupted or tampered file can't run static initializers:
+            return mapper.readValue(value, 0, value.length, Class.forName(type, false, getClassLoader()));
+        } catch (Exception ex) {
+            LOG.warn("Cannot read cached value for key: " + key + " and type: " + type, ex);
+            invalidate(bucket, key);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long getAge(String bucket, String key) {
+        Entry entry = entries.get(new CacheKey(bucket, key));
+        if (entry != null && !closed) {
+            return entry.created != RESTORED ? System.nanoTime() - entry.created : Long.MAX_VALUE;
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public void put(String bucket, String key, Object value) {
+        byte[] bucketBytes = toBytes(bucket);
+        byte[] keyBytes = toBytes(key);
+        byte[] typeBytes = toBytes(value.getClass().getName());
+        byte[] valueBytes = null;
+        try {
+            valueBytes = mapper.writeValueAsBytes(value);
+        } catch (Exception ex) {
+            // Any persisted value must still be replaced, to not restore it later:
+            LOG.warn("Cannot write cached value for key: " + key + " and type: " + value.getClass().getName(), ex);
+            invalidate(bucket, key);
+            return;
+        }
+        long size = (long) RECORD_HEADER_SIZE + 6 + bucketBytes.length + keyBytes.length + typeBytes.length + valueBytes.length;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            CacheKey cacheKey = new CacheKey(bucket, key);
+            remove(cacheKey);
+            // Values too big to fit in half of the file are not worth flushing everything else out:
+            if (bucketBytes.length > Character.MAX_VALUE || keyBytes.length > Character.MAX_VALUE || typeBytes.length > Character.MAX_VALUE
+                    || size > (buffer.capacity() - HEADER_SIZE) / 2) {
+                return;
+            }
+            if (end + size > buffer.capacity()) {
+                compact((int) size);
+            }
+            int offset = end;
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset);
+            record.putInt((int) size);
+            record.put(LIVE);
+            writeString(record, bucketBytes);
+            writeString(record, keyBytes);
+            writeString(record, typeBytes);
+            record.put(valueBytes);
+            // The end offset is updated only after the record has been fully written, so process crashes can't leave partial records,
+            // while OS crashes still can, as mapped pages aren't written back in order: hence, records are validated on restore.
+            setEnd(offset + (int) size);
+            entries.put(cacheKey, new Entry(offset, (int) size, System.nanoTime()));
+            addWeight(bucket, (int) size);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket, String key) {
+        if (!closed) {
+            if (remove(new CacheKey(bucket, key))) {
+                stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket) {
+        if (!closed) {
+            Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CacheKey, Entry> entry = iterator.next();
+                if (entry.getKey().getBucket().equals(bucket)) {
+                    iterator.remove();
+                    kill(entry.getKey(), entry.getValue());
+                    stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return stats.snapshot(new HashMap<String, Long>(weightByBucket));
+    }
+
+    /**
+     * Get the number of cached entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Flush all written values to disk and close the file: values can't be read nor written anymore.
+     */
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+            lock.release();
+            file.close();
+        }
+    }
+
+    private void reset() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        setEnd(HEADER_SIZE);
+    }
+
+    private void restore() {
+        int limit = buffer.getInt(END_OFFSET);
+        if (limit < HEADER_SIZE || limit > buffer.capacity()) {
+            reset();
+            return;
+        }
+        int offset = HEADER_SIZE;
+        while (offset < limit) {
+            int size = buffer.getInt(offset);
+            if (size < RECORD_HEADER_SIZE + 6 || size > limit - offset) {
+                LOG.warn("Corrupted cache record at offset: " + offset + ", discarding following records.");
+                break;
+            }
+            Entry entry = new Entry(offset, size, RESTORED);
+            byte state = buffer.get(offset + 4);
+            if ((state != LIVE && state != DEAD) || !isValid(record(entry))) {
+                LOG.warn("Corrupted cache record at offset: " + offset + ", discarding following records.");
+                break;
+            }
+            if (state == LIVE) {
+                ByteBuffer record = record(entry);
+                CacheKey cacheKey = new CacheKey(readString(record), readString(record));
+                remove(cacheKey);
+                entries.put(cacheKey, entry);
+                addWeight(cacheKey.getBucket(), size);
+            }
+            offset += size;
+        }
+        setEnd(offset);
+    }
+
+    private void compact(int needed) {
+        long toDrop = (long) liveBytes + needed - (buffer.capacity() - HEADER_SIZE);
+        int last = end;
+        // Records are moved in place, so the file is marked empty until done, in case of crashes in the middle:
+        setEnd(HEADER_SIZE);
+        Map<Integer, CacheKey> byOffset = new HashMap<Integer, CacheKey>();
+        for (Map.Entry<CacheKey, Entry> entry : entries.entrySet()) {
+            byOffset.put(entry.getValue().offset, entry.getKey());
+        }
+        int from = HEADER_SIZE;
+        int to = HEADER_SIZE;
+        while (from < last) {
+            int size = buffer.getInt(from);
+            CacheKey cacheKey = byOffset.get(from);
+            if (cacheKey != null) {
+                Entry entry = entries.get(cacheKey);
+                if (toDrop > 0) {
+                    // Records are appended, so the first ones are the oldest:
+                    entries.remove(cacheKey);
+                    addWeight(cacheKey.getBucket(), -size);
+                    stats.recordEviction(CacheStats.EvictionCause.SIZE);
+                    toDrop -= size;
+                } else {
+                    if (from != to) {
+                        ByteBuffer source = buffer.duplicate();
+                        source.position(from);
+                        source.limit(from + size);
+                        ByteBuffer target = buffer.duplicate();
+                        target.position(to);
+                        target.put(source);
+                    }
+                    entry.offset = to;
+                    to += size;
+                }
+            }
+            from += size;
+        }
+        setEnd(to);
+    }
+
+    private boolean remove(CacheKey cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null) {
+            kill(cacheKey, removed);
+        }
+        return removed != null;
+    }
+
+    private void kill(CacheKey cacheKey, Entry entry) {
+        buffer.put(entry.offset + 4, DEAD);
+        addWeight(cacheKey.getBucket(), -entry.size);
+    }
+
+    private void addWeight(String bucket, int size) {
+        liveBytes += size;
+        Long current = weightByBucket.get(bucket);
+        long updated = (current != null ? current : 0) + size;
+        if (updated > 0) {
+            weightByBucket.put(bucket, updated);
+        } else {
+            weightByBucket.remove(bucket);
+        }
+    }
+
+    private void setEnd(int end) {
+        this.end = end;
+        buffer.putInt(END_OFFSET, end);
+    }
+
+    private ByteBuffer record(Entry entry) {
+        ByteBuffer record = buffer.duplicate();
+        record.limit(entry.offset + entry.size);
+        record.position(entry.offset + RECORD_HEADER_SIZE);
+        return record;
+    }
+
+    private static FileLock tryLock(RandomAccessFile file) throws IOException {
+        try {
+            return file.getChannel().tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Already locked by this same process:
+            return null;
+        }
+    }
+
+    private static boolean isValid(ByteBuffer record) {
+        // Bucket, key and type strings must all fit into the record:
+        for (int i = 0; i < 3; i++) {
+            if (record.remaining() < 2) {
+                return false;
+            }
+            int length = record.getChar();
+            if (record.remaining() < length) {
+                return false;
+            }
+            record.position(record.position() + length);
+        }
+        return true;
+    }
+
+    private ClassLoader getClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader != null ? classLoader : DiskCache.class.getClassLoader();
+    }
+
+    private static void writeString(ByteBuffer record, byte[] bytes) {
+        record.putChar((char) bytes.length);
+        record.put(bytes);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getChar()];
+        record.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void skipString(ByteBuffer record) {
+        int length = record.getChar();
+        record.position(record.position() + length);
+    }
+
+    private static byte[] toBytes(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class Entry {
+
+        private int offset;
+        private final int size;
+        private final long created;
+
+        public Entry(int offset, int size, long created) {
+            this.offset = offset;
+            this.size = size;
+            this.created = created;
+        }
+    }
+}
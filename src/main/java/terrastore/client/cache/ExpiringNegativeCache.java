@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NegativeCache} implementation holding missing keys for a given time to live, and evicting
+ * the oldest ones when full.
+ *
+ * @author Sergio Bossa
+ */
+public class ExpiringNegativeCache implements NegativeCache {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final LinkedHashMap<CacheKey, Long> missing = new LinkedHashMap<CacheKey, Long>();
+
+    /**
+     * @param maxEntries The maximum number of missing keys to hold.
+     * @param timeToLive The time each key is considered missing for.
+     * @param unit The time to live unit.
+     */
+    public ExpiringNegativeCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = unit.toNanos(timeToLive);
+    }
+
+    @Override
+    public synchronized boolean isMissing(String bucket, String key) {
+        CacheKey cacheKey = new CacheKey(bucket, key);
+        Long created = missing.get(cacheKey);
+        if (created != null && System.nanoTime() - created < timeToLive) {
+            return true;
+        } else if (created != null) {
+            missing.remove(cacheKey);
+            return false;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void putMissing(String bucket, String key) {
+        CacheKey cacheKey = new CacheKey(bucket, key);
+        missing.remove(cacheKey);
+        if (missing.size() >= maxEntries) {
+            Iterator<Map.Entry<CacheKey, Long>> oldest = missing.entrySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        missing.put(cacheKey, System.nanoTime());
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket, String key) {
+        missing.remove(new CacheKey(bucket, key));
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket) {
+        Iterator<CacheKey> keys = missing.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().getBucket().equals(bucket)) {
+                keys.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact {@link NegativeCache} implementation, holding 64-bit fingerprints of missing keys rather than the keys themselves,
+ * so that each missing key takes a fixed 20 bytes regardless of its length.<br>
+ * Fingerprints are held in a 4-way set-associative table: when a set is full, its oldest fingerprint is replaced.<br>
+ * Fingerprint collisions may cause existing keys to be reported as missing, but with 64-bit fingerprints
+ * this is very unlikely, unless holding billions of keys.
+ *
+ * @author Sergio Bossa
+ */
+public class FingerprintNegativeCache implements NegativeCache {
+
+    private static final int WAYS = 4;
+    //
+    private final long timeToLive;
+    private final long[] fingerprints;
+    private final long[] created;
+    private final int[] buckets;
+    private final int setMask;
+
+    /**
+     * @param maxEntries The maximum number of missing keys to hold, rounded up to the next power of two.
+     * @param timeToLive The time each key is considered missing for.
+     * @param unit The time to live unit.
+     */
+    public FingerprintNegativeCache(int maxEntries, long timeToLive, TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        int sets = Integer.highestOneBit(Math.max((maxEntries + WAYS - 1) / WAYS, 1) * 2 - 1);
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.fingerprints = new long[sets * WAYS];
+        this.created = new long[sets * WAYS];
+        this.buckets = new int[sets * WAYS];
+        this.setMask = sets - 1;
+    }
+
+    @Override
+    public synchronized boolean isMissing(String bucket, String key) {
+        long fingerprint = fingerprint(bucket, key);
+        int slot = find(fingerprint);
+        if (slot >= 0 && System.nanoTime() - created[slot] < timeToLive) {
+            return true;
+        } else if (slot >= 0) {
+            fingerprints[slot] = 0;
+            return false;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void putMissing(String bucket, String key) {
+        long fingerprint = fingerprint(bucket, key);
+        long now = System.nanoTime();
+        int slot = find(fingerprint);
+        if (slot < 0) {
+            int first = setOf(fingerprint);
+            slot = first;
+            for (int i = first; i < first + WAYS; i++) {
+                if (fingerprints[i] == 0) {
+                    slot = i;
+                    break;
+                } else if (created[i] - created[slot] < 0) {
+                    slot = i;
+                }
+            }
+        }
+        fingerprints[slot] = fingerprint;
+        created[slot] = now;
+        buckets[slot] = bucket.hashCode();
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket, String key) {
+        int slot = find(fingerprint(bucket, key));
+        if (slot >= 0) {
+            fingerprints[slot] = 0;
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket) {
+        // Buckets are only identified by hash, so colliding buckets get invalidated too:
+        int hash = bucket.hashCode();
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (buckets[i] == hash) {
+                fingerprints[i] = 0;
+            }
+        }
+    }
+
+    private int find(long fingerprint) {
+        int first = setOf(fingerprint);
+        for (int i = first; i < first + WAYS; i++) {
+            if (fingerprints[i] == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int setOf(long fingerprint) {
+        return ((int) (fingerprint >>> 32) & setMask) * WAYS;
+    }
+
+    private static long fingerprint(String bucket, String key) {
+        // FNV-1a over bucket and key chars, separated so that different splits of the same chars differ:
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < bucket.length(); i++) {
+            hash = (hash ^ bucket.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        // Final avalanche, so that all bits can be used for indexing:
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        // Zero marks empty slots:
+        return hash != 0 ? hash : 1;
+    }
+}
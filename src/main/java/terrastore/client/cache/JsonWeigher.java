@@ -0,0 +1,80 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import org.codehaus.jackson.map.ObjectMapper;
+import terrastore.client.mapping.JsonMapperRegistry;
+import terrastore.client.mapping.JsonObjectDescriptor;
+
+/**
+ * {@link Weigher} estimating values size as the size of their serialized Json document.<br>
+ * Values are serialized to a counting stream, without buffering, but it still costs a serialization
+ * per cached value: implement a custom {@link Weigher} if a cheaper estimate is known.
+ *
+ * @author Sergio Bossa
+ */
+public class JsonWeigher implements Weigher {
+
+    private final ObjectMapper mapper;
+
+    public JsonWeigher() {
+        this(new JsonMapperRegistry(new ArrayList<JsonObjectDescriptor<?>>(0)));
+    }
+
+    /**
+     * @param mapperRegistry The {@link JsonMapperRegistry} used for serializing values, which should be the same one
+     * used by connections.
+     */
+    public JsonWeigher(JsonMapperRegistry mapperRegistry) {
+        this.mapper = mapperRegistry.getMapper();
+    }
+
+    @Override
+    public long weigh(Object value) {
+        if (value instanceof byte[]) {
+            return Math.max(((byte[]) value).length, 1);
+        } else if (value instanceof ByteBuffer) {
+            return Math.max(((ByteBuffer) value).remaining(), 1);
+        } else {
+            CountingOutputStream counter = new CountingOutputStream();
+            try {
+                mapper.writeValue(counter, value);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Cannot weigh value of type: " + value.getClass().getName(), ex);
+            }
+            return Math.max(counter.count, 1);
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
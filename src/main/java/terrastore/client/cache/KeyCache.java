@@ -0,0 +1,61 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+/**
+ * Client-side cache of deserialized values, by bucket and key.<br>
+ * Cached values are shared by all callers, so they must not be modified.<br>
+ * Implementations must be thread-safe.
+ *
+ * @author Sergio Bossa
+ */
+public interface KeyCache {
+
+    /**
+     * Get the cached value for the given bucket and key.
+     *
+     * @return The cached value, or null if not cached or expired.
+     */
+    public Object get(String bucket, String key);
+
+    /**
+     * Get the time elapsed since the value for the given bucket and key has been cached.
+     *
+     * @return The elapsed time in nanoseconds, or -1 if not cached or expired.
+     */
+    public long getAge(String bucket, String key);
+
+    /**
+     * Cache the given value for the given bucket and key, replacing any previously cached value.
+     */
+    public void put(String bucket, String key, Object value);
+
+    /**
+     * Invalidate the cached value for the given bucket and key.
+     */
+    public void invalidate(String bucket, String key);
+
+    /**
+     * Invalidate all cached values for the given bucket.
+     */
+    public void invalidate(String bucket);
+
+    /**
+     * Get a snapshot of the cache statistics: hits and misses count lookups into this cache, while loads are
+     * only recorded by {@link CachingConnectionFactory#getKeyStats()}.
+     */
+    public CacheStats getStats();
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe tracker of cached keys invalidations, used to avoid caching values loaded while being concurrently
+ * written: the key version must be taken before loading, and the loaded value cached only if the version didn't change.<br>
+ * Versions are striped, so invalidations of different keys may spuriously prevent caching, but never let stale values in.
+ *
+ * @author Sergio Bossa
+ */
+class KeyVersions {
+
+    private static final int STRIPES = 1024;
+    //
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    public long get(String bucket, String key) {
+        return versions.get(stripe(bucket, key));
+    }
+
+    public boolean isCurrent(String bucket, String key, long version) {
+        return versions.get(stripe(bucket, key)) == version;
+    }
+
+    /**
+     * Invalidate the given key: it must be called before actually invalidating or updating cached values.
+     */
+    public void invalidate(String bucket, String key) {
+        versions.incrementAndGet(stripe(bucket, key));
+    }
+
+    /**
+     * Invalidate all keys: it must be called before actually invalidating or updating cached values.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+    }
+
+    private int stripe(String bucket, String key) {
+        int hash = bucket.hashCode() * 31 + key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (STRIPES - 1);
+    }
+}
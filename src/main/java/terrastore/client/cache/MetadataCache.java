@@ -0,0 +1,179 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.client.ClusterStats;
+import terrastore.client.TerrastoreClientException;
+import terrastore.client.connection.Connection;
+
+/**
+ * Client-side cache of bucket names and cluster stats snapshots, periodically refreshed in background
+ * by a single task shared by all callers.<br>
+ * Snapshots are loaded on first request, and then refreshed at a fixed interval: if refreshes keep failing,
+ * snapshots older than the max staleness are discarded and reloaded by the next caller, so that errors are seen.<br>
+ * Buckets created by other clients are only seen after the next refresh.<br>
+ * Cached snapshots are shared by all callers, so they must not be modified.
+ *
+ * @author Sergio Bossa
+ */
+public class MetadataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataCache.class);
+    //
+    private final long refreshInterval;
+    private final long maxStaleness;
+    private final Object bucketsLock = new Object();
+    private final Object statsLock = new Object();
+    private final AtomicLong bucketsGeneration = new AtomicLong();
+    private volatile Snapshot<Set<String>> buckets;
+    private volatile Snapshot<ClusterStats> stats;
+    private ScheduledFuture<?> refresher;
+
+    /**
+     * @param refreshInterval The interval between background refreshes.
+     * @param maxStaleness The max age of snapshots served when refreshes fail: it must be greater than the refresh interval.
+     * @param unit The refresh interval and staleness unit.
+     */
+    public MetadataCache(long refreshInterval, long maxStaleness, TimeUnit unit) {
+        if (refreshInterval <= 0 || maxStaleness <= refreshInterval) {
+            throw new IllegalArgumentException("Refresh interval must be positive and less than max staleness: " + refreshInterval + ", " + maxStaleness);
+        }
+        this.refreshInterval = unit.toNanos(refreshInterval);
+        this.maxStaleness = unit.toNanos(maxStaleness);
+    }
+
+    /**
+     * Invalidate the cached bucket names, so that they get reloaded on next request.
+     */
+    public void invalidateBuckets() {
+        bucketsGeneration.incrementAndGet();
+        buckets = null;
+    }
+
+    /**
+     * Stop refreshing snapshots in background: they will be reloaded on request once stale.
+     */
+    public synchronized void stop() {
+        if (refresher != null) {
+            refresher.cancel(false);
+            refresher = null;
+        }
+    }
+
+    Set<String> getBuckets(Connection connection) throws TerrastoreClientException {
+        Snapshot<Set<String>> current = buckets;
+        if (current == null || current.isStale()) {
+            synchronized (bucketsLock) {
+                current = buckets;
+                if (current == null || current.isStale()) {
+                    current = loadBuckets(connection);
+                }
+            }
+            start(connection);
+        }
+        return current.value;
+    }
+
+    ClusterStats getClusterStats(Connection connection) throws TerrastoreClientException {
+        Snapshot<ClusterStats> current = stats;
+        if (current == null || current.isStale()) {
+            synchronized (statsLock) {
+                current = stats;
+                if (current == null || current.isStale()) {
+                    current = loadStats(connection);
+                }
+            }
+            start(connection);
+        }
+        return current.value;
+    }
+
+    private synchronized void start(final Connection connection) {
+        if (refresher == null) {
+            refresher = BackgroundExecutor.get().scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    refresh(connection);
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void refresh(Connection connection) {
+        // Only snapshots actually requested are refreshed:
+        if (buckets != null) {
+            try {
+                synchronized (bucketsLock) {
+                    loadBuckets(connection);
+                }
+            } catch (Exception ex) {
+                LOG.warn("Cannot refresh cached buckets.", ex);
+            }
+        }
+        if (stats != null) {
+            try {
+                synchronized (statsLock) {
+                    loadStats(connection);
+                }
+            } catch (Exception ex) {
+                LOG.warn("Cannot refresh cached cluster stats.", ex);
+            }
+        }
+    }
+
+    private Snapshot<Set<String>> loadBuckets(Connection connection) {
+        long generation = bucketsGeneration.get();
+        Snapshot<Set<String>> loaded = new Snapshot<Set<String>>(Collections.unmodifiableSet(new HashSet<String>(connection.getBuckets())));
+        // Snapshots loaded while being invalidated may predate the invalidating change, so they must not be published:
+        if (bucketsGeneration.get() == generation) {
+            buckets = loaded;
+            if (bucketsGeneration.get() != generation) {
+                buckets = null;
+            }
+        }
+        return loaded;
+    }
+
+    private Snapshot<ClusterStats> loadStats(Connection connection) {
+        Snapshot<ClusterStats> loaded = new Snapshot<ClusterStats>(connection.getClusterStats());
+        stats = loaded;
+        return loaded;
+    }
+
+    private class Snapshot<T> {
+
+        private final T value;
+        private final long loaded;
+
+        public Snapshot(T value) {
+            this.value = value;
+            this.loaded = System.nanoTime();
+        }
+
+        public boolean isStale() {
+            return System.nanoTime() - loaded >= maxStaleness;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeyCache} implementation bounded by number of entries, whose entries expire after a given time to live,
+ * and are evicted by least recent or least frequent use when the cache is full.
+ *
+ * @author Sergio Bossa
+ */
+public class NearCache implements KeyCache {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final EvictionPolicy evictionPolicy;
+    private final LinkedHashMap<CacheKey, Entry> entries;
+    private final TreeSet<Entry> byFrequency;
+    private final StatsCounter stats = new StatsCounter();
+    private long ticks;
+
+    /**
+     * @param maxEntries The maximum number of cached entries.
+     * @param timeToLive The time each entry is cached for, or 0 to cache entries until evicted.
+     * @param unit The time to live unit.
+     * @param evictionPolicy The {@link EvictionPolicy} to apply when the cache is full.
+     */
+    public NearCache(int maxEntries, long timeToLive, TimeUnit unit, EvictionPolicy evictionPolicy) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.evictionPolicy = evictionPolicy;
+        this.entries = new LinkedHashMap<CacheKey, Entry>(16, 0.75f, evictionPolicy == EvictionPolicy.LRU);
+        this.byFrequency = new TreeSet<Entry>(new FrequencyComparator());
+    }
+
+    @Override
+    public synchronized Object get(String bucket, String key) {
+        CacheKey cacheKey = new CacheKey(bucket, key);
+        Entry entry = entries.get(cacheKey);
+        if (entry != null) {
+            if (isExpired(entry)) {
+                remove(cacheKey);
+                stats.recordEviction(CacheStats.EvictionCause.EXPIRED);
+                stats.recordMiss();
+                return null;
+            } else {
+                touch(entry);
+                stats.recordHit();
+                return entry.value;
+            }
+        } else {
+            stats.recordMiss();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long getAge(String bucket, String key) {
+        Entry entry = entries.get(new CacheKey(bucket, key));
+        return entry != null && !isExpired(entry) ? System.nanoTime() - entry.created : -1;
+    }
+
+    @Override
+    public synchronized void put(String bucket, String key, Object value) {
+        CacheKey cacheKey = new CacheKey(bucket, key);
+        remove(cacheKey);
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        Entry entry = new Entry(cacheKey, value, System.nanoTime());
+        entries.put(cacheKey, entry);
+        touch(entry);
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket, String key) {
+        if (remove(new CacheKey(bucket, key))) {
+            stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.key.getBucket().equals(bucket)) {
+                iterator.remove();
+                byFrequency.remove(entry);
+                stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+            }
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return stats.snapshot(Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * Get the number of cached entries, including expired ones not yet removed.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Entry victim = null;
+        if (evictionPolicy == EvictionPolicy.LFU) {
+            victim = byFrequency.first();
+        } else {
+            victim = entries.values().iterator().next();
+        }
+        remove(victim.key);
+        stats.recordEviction(isExpired(victim) ? CacheStats.EvictionCause.EXPIRED : CacheStats.EvictionCause.SIZE);
+    }
+
+    private boolean remove(CacheKey cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null && evictionPolicy == EvictionPolicy.LFU) {
+            byFrequency.remove(removed);
+        }
+        return removed != null;
+    }
+
+    private void touch(Entry entry) {
+        if (evictionPolicy == EvictionPolicy.LFU) {
+            // Frequency and recency are part of the set ordering, so the entry must be re-inserted:
+            byFrequency.remove(entry);
+            entry.hits++;
+            entry.tick = ticks++;
+            byFrequency.add(entry);
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return timeToLive > 0 && System.nanoTime() - entry.created >= timeToLive;
+    }
+
+    /**
+     * Policy used for evicting entries when the cache is full.
+     */
+    public static enum EvictionPolicy {
+
+        /**
+         * Evict the least recently accessed entry.
+         */
+        LRU,
+        /**
+         * Evict the least frequently accessed entry, or the least recently accessed among equally frequent ones.
+         */
+        LFU;
+    }
+
+    private static class Entry {
+
+        private final CacheKey key;
+        private final Object value;
+        private final long created;
+        private long hits;
+        private long tick;
+
+        public Entry(CacheKey key, Object value, long created) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    private static class FrequencyComparator implements Comparator<Entry> {
+
+        @Override
+        public int compare(Entry first, Entry second) {
+            if (first.hits != second.hits) {
+                return first.hits < second.hits ? -1 : 1;
+            } else if (first.tick != second.tick) {
+                return first.tick < second.tick ? -1 : 1;
+            } else {
+                return 0;
+            }
+        }
+    }
+}
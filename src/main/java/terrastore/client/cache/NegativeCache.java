@@ -0,0 +1,45 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+/**
+ * Client-side cache of keys known to be missing, by bucket and key.<br>
+ * Implementations must be thread-safe.
+ *
+ * @author Sergio Bossa
+ */
+public interface NegativeCache {
+
+    /**
+     * Check if the given key has been recently found missing from the given bucket.
+     */
+    public boolean isMissing(String bucket, String key);
+
+    /**
+     * Record the given key as missing from the given bucket.
+     */
+    public void putMissing(String bucket, String key);
+
+    /**
+     * Invalidate the given key of the given bucket, so that it will not be considered missing anymore.
+     */
+    public void invalidate(String bucket, String key);
+
+    /**
+     * Invalidate all keys of the given bucket, so that they will not be considered missing anymore.
+     */
+    public void invalidate(String bucket);
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Arrays;
+
+/**
+ * Key identifying a cached query result by bucket and all query parameters.
+ *
+ * @author Sergio Bossa
+ */
+class QueryKey {
+
+    private final String bucket;
+    private final Object[] parameters;
+
+    public QueryKey(String bucket, Object... parameters) {
+        this.bucket = bucket;
+        this.parameters = parameters;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof QueryKey) {
+            QueryKey other = (QueryKey) obj;
+            return bucket.equals(other.bucket) && Arrays.equals(parameters, other.parameters);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bucket.hashCode() + Arrays.hashCode(parameters);
+    }
+
+    @Override
+    public String toString() {
+        return bucket + Arrays.toString(parameters);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import terrastore.client.BulkOperation;
+import terrastore.client.Values;
+import terrastore.client.connection.Connection;
+
+/**
+ * Asynchronously reloads cached values accessed after a given age, while the current values keep being served.<br>
+ * Values due for refresh are collected for a short time and then reloaded with a single bulk get per bucket and type.<br>
+ * Values written or invalidated after being collected are left alone, as reloaded ones may be older.
+ *
+ * @author Sergio Bossa
+ */
+class Refresher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Refresher.class);
+    private static final long BATCH_DELAY = 10;
+    //
+    private final Connection connection;
+    private final KeyCache keyCache;
+    private final KeyVersions keyVersions;
+    private final long refreshAfter;
+    private final ScheduledExecutorService executor;
+    private final StatsCounter stats;
+    private final ConcurrentMap<CacheKey, Pending> pending = new ConcurrentHashMap<CacheKey, Pending>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param connection The connection to reload values from.
+     * @param keyCache The cache to refresh.
+     * @param keyVersions The versions of cached keys, used to detect values written or invalidated meanwhile.
+     * @param refreshAfter The age in nanoseconds after which accessed values must be refreshed.
+     * @param executor The executor to run reloads with.
+     * @param stats The counter to record reloads into.
+     */
+    public Refresher(Connection connection, KeyCache keyCache, KeyVersions keyVersions, long refreshAfter, ScheduledExecutorService executor, StatsCounter stats) {
+        this.connection = connection;
+        this.keyCache = keyCache;
+        this.keyVersions = keyVersions;
+        this.refreshAfter = refreshAfter;
+        this.executor = executor;
+        this.stats = stats;
+    }
+
+    /**
+     * Record an access to the cached value for the given bucket and key, scheduling its refresh if old enough.
+     */
+    public void onHit(String bucket, String key, Class<?> type) {
+        if (keyCache.getAge(bucket, key) >= refreshAfter && pending.putIfAbsent(new CacheKey(bucket, key), new Pending(type, keyVersions.get(bucket, key))) == null
+                && scheduled.compareAndSet(false, true)) {
+            executor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, BATCH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        scheduled.set(false);
+        Map<String, Map<Class<?>, Map<String, Long>>> batches = new HashMap<String, Map<Class<?>, Map<String, Long>>>();
+        Iterator<Map.Entry<CacheKey, Pending>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<CacheKey, Pending> entry = entries.next();
+            entries.remove();
+            Map<Class<?>, Map<String, Long>> byType = batches.get(entry.getKey().getBucket());
+            if (byType == null) {
+                byType = new HashMap<Class<?>, Map<String, Long>>();
+                batches.put(entry.getKey().getBucket(), byType);
+            }
+            Map<String, Long> versions = byType.get(entry.getValue().type);
+            if (versions == null) {
+                versions = new HashMap<String, Long>();
+                byType.put(entry.getValue().type, versions);
+            }
+            versions.put(entry.getKey().getKey(), entry.getValue().version);
+        }
+        for (Map.Entry<String, Map<Class<?>, Map<String, Long>>> bucket : batches.entrySet()) {
+            for (Map.Entry<Class<?>, Map<String, Long>> batch : bucket.getValue().entrySet()) {
+                refresh(bucket.getKey(), batch.getKey(), batch.getValue());
+            }
+        }
+    }
+
+    private void refresh(String bucket, Class<?> type, Map<String, Long> versions) {
+        long started = System.nanoTime();
+        try {
+            Set<String> keys = new HashSet<String>(versions.keySet());
+            Values<?> values = connection.bulkGet(new BulkOperation(connection, bucket).new Context(keys), type);
+            stats.recordLoadSuccess(System.nanoTime() - started);
+            for (Map.Entry<String, Long> version : versions.entrySet()) {
+                String key = version.getKey();
+                // Values written or invalidated meanwhile may be younger than the refreshed ones, and must be left alone:
+                if (keyVersions.isCurrent(bucket, key, version.getValue())) {
+                    Object value = values.get(key);
+                    if (value != null) {
+                        keyCache.put(bucket, key, value);
+                        if (!keyVersions.isCurrent(bucket, key, version.getValue())) {
+                            keyCache.invalidate(bucket, key);
+                        }
+                    } else {
+                        keyCache.invalidate(bucket, key);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            stats.recordLoadFailure(System.nanoTime() - started);
+            LOG.warn("Cannot refresh cached values for bucket: " + bucket, ex);
+        }
+    }
+
+    private static class Pending {
+
+        private final Class<?> type;
+        private final long version;
+
+        public Pending(Class<?> type, long version) {
+            this.type = type;
+            this.version = version;
+        }
+    }
+}
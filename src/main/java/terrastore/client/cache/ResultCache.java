@@ -0,0 +1,174 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import terrastore.client.TerrastoreClientException;
+
+/**
+ * Client-side cache of range, predicate and map-reduce query results, bounded by number of entries
+ * and evicting least recently used entries when full.<br>
+ * Results are only returned if younger than the time to live requested by each caller, and reloaded otherwise:
+ * range results are requested with the same time to live the server is allowed to keep the range snapshot for,
+ * other results with the default time to live given at construction.<br>
+ * Concurrent executions of the same query wait for a single query to the server.<br>
+ * Cached results are shared by all callers, so they must not be modified.
+ *
+ * @author Sergio Bossa
+ */
+public class ResultCache {
+
+    private final int maxEntries;
+    private final long defaultTimeToLive;
+    private final LinkedHashMap<QueryKey, Entry<?>> entries = new LinkedHashMap<QueryKey, Entry<?>>(16, 0.75f, true);
+    private final StatsCounter stats = new StatsCounter();
+
+    /**
+     * @param maxEntries The maximum number of cached results.
+     * @param defaultTimeToLive The time predicate and map-reduce results without a range time to live are cached for,
+     * or 0 to not cache them.
+     * @param unit The default time to live unit.
+     */
+    public ResultCache(int maxEntries, long defaultTimeToLive, TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.defaultTimeToLive = unit.toNanos(defaultTimeToLive);
+    }
+
+    /**
+     * Get the default time to live of results, in nanoseconds.
+     */
+    public long getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    /**
+     * Invalidate all cached results for the given bucket.
+     */
+    public synchronized void invalidate(String bucket) {
+        Iterator<QueryKey> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().getBucket().equals(bucket)) {
+                keys.remove();
+                stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+            }
+        }
+    }
+
+    /**
+     * Get a snapshot of the result cache statistics.
+     */
+    public CacheStats getStats() {
+        return stats.snapshot(Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * Get the number of cached results, including expired ones not yet removed.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    <T> T get(QueryKey key, long timeToLive, Callable<T> loader) throws TerrastoreClientException {
+        Entry<T> entry = null;
+        boolean loading = false;
+        synchronized (this) {
+            entry = getEntry(key);
+            if (entry == null || entry.isExpired(timeToLive)) {
+                if (entry != null) {
+                    stats.recordEviction(CacheStats.EvictionCause.EXPIRED);
+                }
+                entry = new Entry<T>(loader, timeToLive);
+                entries.put(key, entry);
+                if (entries.size() > maxEntries) {
+                    Iterator<Entry<?>> eldest = entries.values().iterator();
+                    Entry<?> evicted = eldest.next();
+                    eldest.remove();
+                    stats.recordEviction(evicted.isExpired(evicted.timeToLive) ? CacheStats.EvictionCause.EXPIRED : CacheStats.EvictionCause.SIZE);
+                }
+                stats.recordMiss();
+                loading = true;
+            } else {
+                stats.recordHit();
+            }
+        }
+        long started = System.nanoTime();
+        if (loading) {
+            entry.load();
+        }
+        try {
+            T result = entry.result.get();
+            if (loading) {
+                stats.recordLoadSuccess(System.nanoTime() - started);
+            }
+            return result;
+        } catch (ExecutionException ex) {
+            if (loading) {
+                stats.recordLoadFailure(System.nanoTime() - started);
+            }
+            synchronized (this) {
+                // Failed results are never cached:
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else {
+                throw new TerrastoreClientException(ex.getCause().getMessage(), ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TerrastoreClientException("Interrupted while waiting for query result.", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> getEntry(QueryKey key) {
+        // Query keys include the result type, so cached entries always hold results of the requested type:
+        return (Entry<T>) entries.get(key);
+    }
+
+    private static class Entry<T> {
+
+        private final FutureTask<T> result;
+        private final long timeToLive;
+        private volatile long loaded;
+
+        public Entry(Callable<T> loader, long timeToLive) {
+            this.result = new FutureTask<T>(loader);
+            this.timeToLive = timeToLive;
+        }
+
+        public void load() {
+            result.run();
+            loaded = System.nanoTime();
+        }
+
+        public boolean isExpired(long timeToLive) {
+            // Entries being loaded never expire:
+            return loaded != 0 && System.nanoTime() - loaded >= timeToLive;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe accumulator of cache statistics.
+ *
+ * @author Sergio Bossa
+ */
+class StatsCounter {
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadSuccessCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLongArray evictionCounts = new AtomicLongArray(CacheStats.EvictionCause.values().length);
+
+    public void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    public void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.incrementAndGet();
+        totalLoadTime.addAndGet(loadTime);
+    }
+
+    public void recordLoadFailure(long loadTime) {
+        loadFailureCount.incrementAndGet();
+        totalLoadTime.addAndGet(loadTime);
+    }
+
+    public void recordEviction(CacheStats.EvictionCause cause) {
+        evictionCounts.incrementAndGet(cause.ordinal());
+    }
+
+    public CacheStats snapshot(Map<String, Long> weightByBucket) {
+        Map<CacheStats.EvictionCause, Long> evictions = new EnumMap<CacheStats.EvictionCause, Long>(CacheStats.EvictionCause.class);
+        for (CacheStats.EvictionCause cause : CacheStats.EvictionCause.values()) {
+            evictions.put(cause, evictionCounts.get(cause.ordinal()));
+        }
+        return new CacheStats(hitCount.get(), missCount.get(), loadSuccessCount.get(), loadFailureCount.get(), totalLoadTime.get(),
+                evictions, weightByBucket);
+    }
+}
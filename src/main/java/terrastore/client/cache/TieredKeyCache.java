@@ -0,0 +1,94 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+/**
+ * {@link KeyCache} implementation made of an in-memory cache backed by a {@link DiskCache}: values are written
+ * to both, but only read from disk, then kept in memory, if restored at startup and missing from memory.<br>
+ * Values restored from disk are served straight away, but always refreshed on first access, through the same
+ * bulk gets used for refresh-ahead; values written since startup are only served from memory, so that they
+ * expire as configured by the in-memory cache.
+ *
+ * @author Sergio Bossa
+ */
+public class TieredKeyCache implements KeyCache {
+
+    private final KeyCache memoryCache;
+    private final DiskCache diskCache;
+
+    /**
+     * @param memoryCache The in-memory {@link KeyCache}.
+     * @param diskCache The {@link DiskCache} backing the in-memory one.
+     */
+    public TieredKeyCache(KeyCache memoryCache, DiskCache diskCache) {
+        this.memoryCache = memoryCache;
+        this.diskCache = diskCache;
+    }
+
+    @Override
+    public Object get(String bucket, String key) {
+        Object value = memoryCache.get(bucket, key);
+        if (value == null) {
+            long diskAge = diskCache.getAge(bucket, key);
+            if (diskAge == Long.MAX_VALUE) {
+                value = diskCache.get(bucket, key);
+                if (value != null) {
+                    memoryCache.put(bucket, key, value);
+                }
+            } else if (diskAge >= 0) {
+                // Expired or evicted from memory, so it must not be served nor restored anymore:
+                diskCache.invalidate(bucket, key);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public long getAge(String bucket, String key) {
+        long diskAge = diskCache.getAge(bucket, key);
+        if (diskAge == Long.MAX_VALUE) {
+            return diskAge;
+        } else {
+            return memoryCache.getAge(bucket, key);
+        }
+    }
+
+    @Override
+    public void put(String bucket, String key, Object value) {
+        memoryCache.put(bucket, key, value);
+        diskCache.put(bucket, key, value);
+    }
+
+    @Override
+    public void invalidate(String bucket, String key) {
+        memoryCache.invalidate(bucket, key);
+        diskCache.invalidate(bucket, key);
+    }
+
+    @Override
+    public void invalidate(String bucket) {
+        memoryCache.invalidate(bucket);
+        diskCache.invalidate(bucket);
+    }
+
+    /**
+     * Get a snapshot of the in-memory cache statistics: disk ones are available from the {@link DiskCache} itself.
+     */
+    @Override
+    public CacheStats getStats() {
+        return memoryCache.getStats();
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeyCache} implementation bounded by the estimated size in bytes of its values, as computed by
+ * a {@link Weigher}, and implementing the W-TinyLFU eviction policy.<br>
+ * New entries are first admitted into a small LRU window (1% of max size); entries evicted from the window
+ * then only enter the main cache if their estimated access frequency is higher than the one of the main cache victim.
+ * This way, large one-off reads such as scans cannot flush frequently accessed entries.<br>
+ * The main cache is a segmented LRU: entries accessed while on probation are promoted to the protected segment
+ * (80% of the main cache size).<br>
+ * Values larger than the max size are never cached.
+ *
+ * @author Sergio Bossa
+ */
+public class TinyLfuCache implements KeyCache {
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+    private final long timeToLive;
+    private final Weigher weigher;
+    private final Map<CacheKey, Entry> entries = new HashMap<CacheKey, Entry>();
+    private final LinkedHashMap<CacheKey, Entry> window = new LinkedHashMap<CacheKey, Entry>();
+    private final LinkedHashMap<CacheKey, Entry> probation = new LinkedHashMap<CacheKey, Entry>();
+    private final LinkedHashMap<CacheKey, Entry> protection = new LinkedHashMap<CacheKey, Entry>();
+    private final Map<String, Long> weightByBucket = new HashMap<String, Long>();
+    private final StatsCounter stats = new StatsCounter();
+    private FrequencySketch sketch = new FrequencySketch(16);
+    private long windowWeight;
+    private long probationWeight;
+    private long protectionWeight;
+
+    /**
+     * @param maxWeight The maximum estimated size in bytes of cached values.
+     * @param timeToLive The time each entry is cached for, or 0 to cache entries until evicted.
+     * @param unit The time to live unit.
+     * @param weigher The {@link Weigher} estimating the size of values.
+     */
+    public TinyLfuCache(long maxWeight, long timeToLive, TimeUnit unit, Weigher weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = Math.max(maxWeight / 100, 1);
+        this.protectedMaxWeight = (maxWeight - windowMaxWeight) * 8 / 10;
+        this.timeToLive = unit.toNanos(timeToLive);
+        this.weigher = weigher;
+    }
+
+    @Override
+    public synchronized Object get(String bucket, String key) {
+        CacheKey cacheKey = new CacheKey(bucket, key);
+        sketch.increment(hash(cacheKey));
+        Entry entry = entries.get(cacheKey);
+        if (entry != null) {
+            if (isExpired(entry)) {
+                remove(entry);
+                stats.recordEviction(CacheStats.EvictionCause.EXPIRED);
+                stats.recordMiss();
+                return null;
+            } else {
+                onHit(entry);
+                stats.recordHit();
+                return entry.value;
+            }
+        } else {
+            stats.recordMiss();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long getAge(String bucket, String key) {
+        Entry entry = entries.get(new CacheKey(bucket, key));
+        return entry != null && !isExpired(entry) ? System.nanoTime() - entry.created : -1;
+    }
+
+    @Override
+    public void put(String bucket, String key, Object value) {
+        // Weigh out of the lock, as it may serialize the whole value:
+        long weight;
+        try {
+            weight = weigher.weigh(value);
+        } catch (RuntimeException ex) {
+            // Values that can't be weighed are just not cached, but still replace any cached one:
+            weight = Long.MAX_VALUE;
+        }
+        synchronized (this) {
+            CacheKey cacheKey = new CacheKey(bucket, key);
+            remove(entries.get(cacheKey));
+            if (weight <= maxWeight) {
+                Entry entry = new Entry(cacheKey, value, weight, System.nanoTime());
+                entries.put(cacheKey, entry);
+                ensureSketchCapacity();
+                sketch.increment(hash(cacheKey));
+                window.put(cacheKey, entry);
+                windowWeight += weight;
+                addWeight(bucket, weight);
+                evict();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket, String key) {
+        Entry entry = entries.get(new CacheKey(bucket, key));
+        if (entry != null) {
+            remove(entry);
+            stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String bucket) {
+        List<Entry> invalidated = new ArrayList<Entry>();
+        for (Entry entry : entries.values()) {
+            if (entry.key.getBucket().equals(bucket)) {
+                invalidated.add(entry);
+            }
+        }
+        for (Entry entry : invalidated) {
+            remove(entry);
+            stats.recordEviction(CacheStats.EvictionCause.INVALIDATED);
+        }
+    }
+
+    @Override
+    public synchronized CacheStats getStats() {
+        return stats.snapshot(new HashMap<String, Long>(weightByBucket));
+    }
+
+    /**
+     * Get the estimated size in bytes of cached values, including expired ones not yet removed.
+     */
+    public synchronized long weight() {
+        return windowWeight + probationWeight + protectionWeight;
+    }
+
+    /**
+     * Get the number of cached entries, including expired ones not yet removed.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void ensureSketchCapacity() {
+        if (entries.size() > sketch.capacity()) {
+            // Carry over the frequencies of cached entries, to avoid losing track of the hot ones:
+            FrequencySketch grown = new FrequencySketch(entries.size() * 2);
+            for (CacheKey key : entries.keySet()) {
+                int hash = hash(key);
+                for (int frequency = sketch.frequency(hash); frequency > 0; frequency--) {
+                    grown.increment(hash);
+                }
+            }
+            sketch = grown;
+        }
+    }
+
+    private void onHit(Entry entry) {
+        if (entry.segment == Segment.WINDOW) {
+            window.remove(entry.key);
+            window.put(entry.key, entry);
+        } else if (entry.segment == Segment.PROBATION) {
+            probation.remove(entry.key);
+            probationWeight -= entry.weight;
+            entry.segment = Segment.PROTECTED;
+            protection.put(entry.key, entry);
+            protectionWeight += entry.weight;
+            demote(entry);
+        } else {
+            protection.remove(entry.key);
+            protection.put(entry.key, entry);
+        }
+    }
+
+    private void demote(Entry promoted) {
+        while (protectionWeight > protectedMaxWeight) {
+            Entry demoted = protection.values().iterator().next();
+            if (demoted == promoted) {
+                break;
+            }
+            protection.remove(demoted.key);
+            protectionWeight -= demoted.weight;
+            demoted.segment = Segment.PROBATION;
+            probation.put(demoted.key, demoted);
+            probationWeight += demoted.weight;
+        }
+    }
+
+    private void evict() {
+        LinkedList<Entry> candidates = new LinkedList<Entry>();
+        while (windowWeight > windowMaxWeight) {
+            Entry candidate = window.values().iterator().next();
+            window.remove(candidate.key);
+            windowWeight -= candidate.weight;
+            candidate.segment = Segment.PROBATION;
+            probation.put(candidate.key, candidate);
+            probationWeight += candidate.weight;
+            candidates.add(candidate);
+        }
+        while (weight() > maxWeight) {
+            Entry victim = firstOf(probation);
+            if (victim == null) {
+                victim = firstOf(protection);
+            }
+            if (victim == null) {
+                victim = firstOf(window);
+            }
+            Entry candidate = candidates.peek();
+            if (candidate == null) {
+                // No entries moved out of the window, so the least recent window entry competes with the victim:
+                candidate = firstOf(window);
+            }
+            if (candidate == null || candidate == victim) {
+                evict(victim);
+                candidates.remove(victim);
+            } else if (sketch.frequency(hash(candidate.key)) > sketch.frequency(hash(victim.key))) {
+                evict(victim);
+            } else {
+                evict(candidate);
+                candidates.remove(candidate);
+            }
+        }
+    }
+
+    private void evict(Entry entry) {
+        remove(entry);
+        stats.recordEviction(isExpired(entry) ? CacheStats.EvictionCause.EXPIRED : CacheStats.EvictionCause.SIZE);
+    }
+
+    private void remove(Entry entry) {
+        if (entry != null) {
+            entries.remove(entry.key);
+            if (entry.segment == Segment.WINDOW) {
+                window.remove(entry.key);
+                windowWeight -= entry.weight;
+            } else if (entry.segment == Segment.PROBATION) {
+                probation.remove(entry.key);
+                probationWeight -= entry.weight;
+            } else {
+                protection.remove(entry.key);
+                protectionWeight -= entry.weight;
+            }
+            addWeight(entry.key.getBucket(), -entry.weight);
+        }
+    }
+
+    private void addWeight(String bucket, long weight) {
+        Long current = weightByBucket.get(bucket);
+        long updated = (current != null ? current : 0) + weight;
+        if (updated > 0) {
+            weightByBucket.put(bucket, updated);
+        } else {
+            weightByBucket.remove(bucket);
+        }
+    }
+
+    private Entry firstOf(LinkedHashMap<CacheKey, Entry> segment) {
+        return segment.isEmpty() ? null : segment.values().iterator().next();
+    }
+
+    private boolean isExpired(Entry entry) {
+        return timeToLive > 0 && System.nanoTime() - entry.created >= timeToLive;
+    }
+
+    private int hash(CacheKey key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static enum Segment {
+
+        WINDOW, PROBATION, PROTECTED;
+    }
+
+    private static class Entry {
+
+        private final CacheKey key;
+        private final Object value;
+        private final long weight;
+        private final long created;
+        private Segment segment = Segment.WINDOW;
+
+        public Entry(CacheKey key, Object value, long weight, long created) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+/**
+ * Estimates the size in bytes of cached values.
+ *
+ * @author Sergio Bossa
+ */
+public interface Weigher {
+
+    /**
+     * Estimate the size in bytes of the given value.
+     *
+     * @param value The value to weigh, never null.
+     * @return The estimated size in bytes, greater than 0.
+     * @throws IllegalArgumentException If the value can't be weighed: it will not be cached then.
+     */
+    public long weigh(Object value);
+}
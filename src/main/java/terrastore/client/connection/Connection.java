@@ -27,6 +27,7 @@ import terrastore.client.RangeOperation;
 import terrastore.client.TerrastoreClientException;
 import terrastore.client.UpdateOperation;
 import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
 import terrastore.client.ValuesOperation;
 import terrastore.client.RangeOperation.Context;
 import terrastore.client.mapreduce.MapReduceOperation;
@@ -87,6 +88,30 @@ public interface Connection {
     <T> T getValue(ConditionalOperation.Context context, Class<T> type)
             throws TerrastoreClientException;
 
+    /**
+     * Gets the stored value for a key, as an instance of the specified Java
+     * type, or null if the key doesn't exist.
+     */
+    <T> T getValueIfPresent(KeyOperation.Context context, Class<T> type)
+            throws TerrastoreClientException;
+
+    /**
+     * Conditionally gets the stored value for a key, as an instance of the specified Java
+     * type, or null if the key doesn't exist or the condition isn't satisfied.
+     */
+    <T> T getValueIfPresent(ConditionalOperation.Context context, Class<T> type)
+            throws TerrastoreClientException;
+
+    /**
+     * Checks if a key exists, without retrieving its value.
+     */
+    boolean exists(KeyOperation.Context context) throws TerrastoreClientException;
+
+    /**
+     * Checks if a key exists and its value satisfies a condition, without retrieving its value.
+     */
+    boolean exists(ConditionalOperation.Context context) throws TerrastoreClientException;
+
     /**
      * Returns all (or up to the specified limit) values within a bucket.
      */
@@ -99,6 +124,12 @@ public interface Connection {
     <T> Values<T> queryByRange(RangeOperation.Context context, Class<T> type)
             throws TerrastoreClientException;
 
+    /**
+     * Executes a range query and returns the results as a stream of keys/values, lazily parsed as they're consumed.
+     */
+    <T> ValuesIterator<T> streamByRange(RangeOperation.Context context, Class<T> type)
+            throws TerrastoreClientException;
+
     /**
      * Executes a range based remove command and returns the removed key set
      */
@@ -111,6 +142,12 @@ public interface Connection {
     <T> Values<T> queryByPredicate(PredicateOperation.Context context, Class<T> type)
             throws TerrastoreClientException;
 
+    /**
+     * Executes a predicate query on all values and returns the results as a stream of keys/values, lazily parsed as they're consumed.
+     */
+    <T> ValuesIterator<T> streamByPredicate(PredicateOperation.Context context, Class<T> type)
+            throws TerrastoreClientException;
+
     /**
      * Executes a map-reduce query and returns the aggregated value.
      */
@@ -146,4 +183,9 @@ public interface Connection {
      * Executes a bulk get operation and returns all values corresponding to the given keys.
      */
     <T> Values<T> bulkGet(BulkOperation.Context context, Class<T> type) throws TerrastoreClientException;
+
+    /**
+     * Executes a bulk get operation and returns all values corresponding to the given keys as a stream, lazily parsed as they're consumed.
+     */
+    <T> ValuesIterator<T> streamBulkGet(BulkOperation.Context context, Class<T> type) throws TerrastoreClientException;
 }
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection;
+
+/**
+ * Service provider interface for collecting metrics about requests made by a {@link Connection}.<br>
+ * Implementations are called by all threads on every request, so they must be thread-safe,
+ * and should neither block nor allocate.
+ *
+ * @author Sergio Bossa
+ */
+public interface ConnectionMetrics {
+
+    /**
+     * Record a completed request, either successful or failed.
+     *
+     * @param type The type of the operation.
+     * @param bucket The bucket name, or null for operations not involving a single bucket.
+     * @param latency The time spent by the operation in nanoseconds, including waiting for a pooled HTTP connection,
+     * sending the request and reading the response: streamed responses are timed until the stream is closed.
+     * @param requestBytes The request body size in bytes, or -1 if unknown.
+     * @param responseBytes The response body size in bytes, counting only bytes actually read if the response
+     * has been read, or -1 if unknown.
+     */
+    public void onRequest(OperationType type, String bucket, long latency, long requestBytes, long responseBytes);
+
+    /**
+     * Record a failed request, before recording it as completed.
+     *
+     * @param type The type of the operation.
+     * @param bucket The bucket name, or null for operations not involving a single bucket.
+     * @param errorType The class of the exception thrown to the caller.
+     */
+    public void onError(OperationType type, String bucket, Class<? extends Throwable> errorType);
+
+    /**
+     * Types of operations performed by connections.
+     */
+    public static enum OperationType {
+
+        GET_CLUSTER_STATS,
+        CLEAR_BUCKET,
+        GET_BUCKETS,
+        PUT_VALUE,
+        CONDITIONAL_PUT_VALUE,
+        GET_VALUE,
+        CONDITIONAL_GET_VALUE,
+        EXISTS,
+        CONDITIONAL_EXISTS,
+        REMOVE_VALUE,
+        GET_ALL_VALUES,
+        QUERY_BY_RANGE,
+        STREAM_BY_RANGE,
+        REMOVE_BY_RANGE,
+        QUERY_BY_PREDICATE,
+        STREAM_BY_PREDICATE,
+        QUERY_BY_MAP_REDUCE,
+        EXPORT_BACKUP,
+        IMPORT_BACKUP,
+        EXECUTE_UPDATE,
+        EXECUTE_MERGE,
+        BULK_GET,
+        STREAM_BULK_GET,
+        BULK_PUT;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ConnectionMetrics} implementation keeping a {@link LatencyHistogram}, error counts by exception class,
+ * and request/response bytes, for each operation type and bucket.<br>
+ * Recording only allocates the first time an operation type, bucket or exception class is seen.
+ *
+ * @author Sergio Bossa
+ */
+public class HistogramMetrics implements ConnectionMetrics {
+
+    private static final String NO_BUCKET = "";
+    //
+    private final ConcurrentMap<String, OperationStats>[] stats;
+
+    @SuppressWarnings("unchecked")
+    public HistogramMetrics() {
+        this.stats = new ConcurrentMap[OperationType.values().length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new ConcurrentHashMap<String, OperationStats>();
+        }
+    }
+
+    @Override
+    public void onRequest(OperationType type, String bucket, long latency, long requestBytes, long responseBytes) {
+        OperationStats operation = getOrCreate(type, bucket);
+        operation.latency.record(latency);
+        if (requestBytes > 0) {
+            operation.requestBytes.addAndGet(requestBytes);
+        }
+        if (responseBytes > 0) {
+            operation.responseBytes.addAndGet(responseBytes);
+        }
+    }
+
+    @Override
+    public void onError(OperationType type, String bucket, Class<? extends Throwable> errorType) {
+        ConcurrentMap<Class<? extends Throwable>, AtomicLong> errors = getOrCreate(type, bucket).errors;
+        AtomicLong count = errors.get(errorType);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = errors.putIfAbsent(errorType, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Get the buckets the given operation type has been recorded for, or the empty string for operations
+     * not involving a single bucket.
+     */
+    public Set<String> getBuckets(OperationType type) {
+        return Collections.unmodifiableSet(new HashSet<String>(stats[type.ordinal()].keySet()));
+    }
+
+    /**
+     * Get the stats of the given operation type and bucket.
+     *
+     * @param type The operation type.
+     * @param bucket The bucket name, or null for operations not involving a single bucket.
+     * @return The operation stats, or null if no such operation has been recorded.
+     */
+    public OperationStats getStats(OperationType type, String bucket) {
+        return stats[type.ordinal()].get(bucket != null ? bucket : NO_BUCKET);
+    }
+
+    private OperationStats getOrCreate(OperationType type, String bucket) {
+        ConcurrentMap<String, OperationStats> byBucket = stats[type.ordinal()];
+        String key = bucket != null ? bucket : NO_BUCKET;
+        OperationStats operation = byBucket.get(key);
+        if (operation == null) {
+            OperationStats created = new OperationStats();
+            operation = byBucket.putIfAbsent(key, created);
+            if (operation == null) {
+                operation = created;
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Stats of a single operation type and bucket.
+     */
+    public static class OperationStats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+        private final ConcurrentMap<Class<? extends Throwable>, AtomicLong> errors = new ConcurrentHashMap<Class<? extends Throwable>, AtomicLong>();
+
+        /**
+         * Get the histogram of latencies in nanoseconds, including the failed requests.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        /**
+         * Get the number of failed requests, by class of the exception thrown to the caller.
+         */
+        public Map<Class<? extends Throwable>, Long> getErrorCounts() {
+            Map<Class<? extends Throwable>, Long> counts = new HashMap<Class<? extends Throwable>, Long>();
+            for (Map.Entry<Class<? extends Throwable>, AtomicLong> error : errors.entrySet()) {
+                counts.put(error.getKey(), error.getValue().get());
+            }
+            return counts;
+        }
+    }
+}
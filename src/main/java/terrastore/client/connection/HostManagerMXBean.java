@@ -0,0 +1,51 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection;
+
+import java.util.List;
+
+/**
+ * Management interface exposing the state of a {@link HostManager}.
+ *
+ * @author Sergio Bossa
+ */
+public interface HostManagerMXBean {
+
+    /**
+     * Get the host currently used for connecting to the Terrastore cluster.
+     */
+    public String getActiveHost();
+
+    /**
+     * Get all hosts, in order of preference.
+     */
+    public List<String> getHosts();
+
+    /**
+     * Get the hosts suspected because of connection errors, and not used again since then.
+     */
+    public List<String> getSuspectedHosts();
+
+    /**
+     * Get the time of the last suspicion, in milliseconds since the epoch, or 0 if no host has ever been suspected.
+     */
+    public long getLastSuspicionTime();
+
+    /**
+     * Get the number of times hosts have been suspected.
+     */
+    public long getSuspicionCount();
+}
@@ -15,19 +15,26 @@
  */
 package terrastore.client.connection;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link HostManager} implementation managing an ordered list of Terrastore server hosts.<br/>
  * It always gets the first working connection in the list: in case of failure, the connection is moved at the end of the list and the
- * next one is used.
+ * next one is used.<br>
+ * Its state can be monitored by registering it into an MBean server, as a {@link HostManagerMXBean}.
  *
  * @author Sergio Bossa
  */
-public class OrderedHostManager implements HostManager {
+public class OrderedHostManager implements HostManager, HostManagerMXBean {
 
     private final List<String> hosts;
+    private final Set<String> suspected = new LinkedHashSet<String>();
+    private long lastSuspicionTime;
+    private long suspicionCount;
 
     public OrderedHostManager(List<String> hosts) {
         this.hosts = new LinkedList<String>(hosts);
@@ -35,16 +42,48 @@ public class OrderedHostManager implements HostManager {
 
     @Override
     public synchronized String getHost() {
-        return hosts.get(0);
+        String host = hosts.get(0);
+        if (!suspected.isEmpty()) {
+            suspected.remove(host);
+        }
+        return host;
     }
 
     @Override
     public synchronized void suspect(String suspected) {
         if (hosts.contains(suspected)) {
             moveToEndOfList(suspected);
+            this.suspected.add(suspected);
+            lastSuspicionTime = System.currentTimeMillis();
+            suspicionCount++;
         }
     }
 
+    @Override
+    public synchronized String getActiveHost() {
+        return hosts.get(0);
+    }
+
+    @Override
+    public synchronized List<String> getHosts() {
+        return new ArrayList<String>(hosts);
+    }
+
+    @Override
+    public synchronized List<String> getSuspectedHosts() {
+        return new ArrayList<String>(suspected);
+    }
+
+    @Override
+    public synchronized long getLastSuspicionTime() {
+        return lastSuspicionTime;
+    }
+
+    @Override
+    public synchronized long getSuspicionCount() {
+        return suspicionCount;
+    }
+
     private void moveToEndOfList(String suspected) {
         hosts.remove(suspected);
         hosts.add(suspected);
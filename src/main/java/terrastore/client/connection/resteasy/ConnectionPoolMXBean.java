@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing the state of the HTTP connection pool, by host.<br>
+ * Hosts are identified as host name and port.
+ *
+ * @author Sergio Bossa
+ */
+public interface ConnectionPoolMXBean {
+
+    public int getMaxTotalConnections();
+
+    public int getMaxConnectionsPerHost();
+
+    /**
+     * Get the number of connections currently used by requests.
+     */
+    public Map<String, Integer> getLeasedConnections();
+
+    /**
+     * Get the number of open connections currently available in the pool.
+     */
+    public Map<String, Integer> getIdleConnections();
+
+    /**
+     * Get the number of requests currently waiting to acquire a connection.
+     */
+    public Map<String, Integer> getPendingConnections();
+
+    /**
+     * Get the number of connections acquired since the last reset.
+     */
+    public Map<String, Long> getAcquiredConnections();
+
+    /**
+     * Get the average time spent waiting to acquire a connection since the last reset, in milliseconds.
+     */
+    public Map<String, Double> getAverageWaitTime();
+
+    /**
+     * Get the max time spent waiting to acquire a connection since the last reset, in milliseconds.
+     */
+    public Map<String, Double> getMaxWaitTime();
+
+    /**
+     * Reset acquired connections and wait times.
+     */
+    public void resetWaitTimes();
+}
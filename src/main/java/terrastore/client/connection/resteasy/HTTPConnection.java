@@ -17,20 +17,20 @@ package terrastore.client.connection.resteasy;
 
 import static org.jboss.resteasy.plugins.providers.RegisterBuiltin.registerProviders;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.UriBuilder;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.jboss.resteasy.client.ClientRequest;
 import org.jboss.resteasy.client.ClientRequestFactory;
 import org.jboss.resteasy.client.ClientResponse;
-import org.jboss.resteasy.client.core.executors.ApacheHttpClientExecutor;
+import org.jboss.resteasy.client.core.BaseClientResponse;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,23 +38,30 @@ import org.slf4j.LoggerFactory;
 import terrastore.client.BackupOperation;
 import terrastore.client.BulkOperation.Context;
 import terrastore.client.ClusterStats;
+import terrastore.client.CompactKeySet;
 import terrastore.client.ConditionalOperation;
 import terrastore.client.KeyOperation;
+import terrastore.client.LazyValues;
 import terrastore.client.PredicateOperation;
 import terrastore.client.RangeOperation;
 import terrastore.client.TerrastoreClientException;
 import terrastore.client.UpdateOperation;
 import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
 import terrastore.client.ValuesOperation;
 import terrastore.client.connection.Connection;
+import terrastore.client.connection.ConnectionMetrics;
+import terrastore.client.connection.ConnectionMetrics.OperationType;
 import terrastore.client.connection.HostManager;
 import terrastore.client.connection.TerrastoreConnectionException;
 import terrastore.client.connection.resteasy.ExceptionTranslator.Operation;
 import terrastore.client.mapping.JsonClusterStatsReader;
+import terrastore.client.mapping.JsonMapperRegistry;
 import terrastore.client.mapping.JsonObjectDescriptor;
 import terrastore.client.mapping.JsonObjectReader;
 import terrastore.client.mapping.JsonObjectWriter;
 import terrastore.client.mapping.JsonParametersWriter;
+import terrastore.client.mapping.JsonValuesIterator;
 import terrastore.client.mapping.JsonValuesReader;
 import terrastore.client.mapping.JsonValuesWriter;
 import terrastore.client.mapreduce.MapReduceOperation;
@@ -74,26 +81,53 @@ public class HTTPConnection implements Connection {
     private static final String JSON_CONTENT_TYPE = "application/json";
     //
     private final HostManager hostManager;
+    private final MeteredClientExecutor executor;
     private final ClientRequestFactory requestFactory;
+    private final ConnectionMetrics metrics;
     private final ExceptionTranslator exceptionTranslator = new ExceptionTranslator();
+    private final RequestUris requestUris = new RequestUris();
+    private final JsonValuesReader valuesReader;
+    private final JsonObjectReader objectReader;
 
     public HTTPConnection(HostManager hostManager, List<JsonObjectDescriptor<?>> descriptors) {
         this(hostManager, descriptors, new HttpClient(new MultiThreadedHttpConnectionManager()));
     }
 
     public HTTPConnection(HostManager hostManager, List<JsonObjectDescriptor<?>> descriptors, HttpClient httpClient) {
+        this(hostManager, new JsonMapperRegistry(descriptors), httpClient);
+    }
+
+    public HTTPConnection(HostManager hostManager, JsonMapperRegistry mapperRegistry) {
+        this(hostManager, mapperRegistry, new HttpClient(new MultiThreadedHttpConnectionManager()));
+    }
+
+    public HTTPConnection(HostManager hostManager, JsonMapperRegistry mapperRegistry, HttpClient httpClient) {
+        this(hostManager, mapperRegistry, httpClient, null);
+    }
+
+    /**
+     * @param hostManager The {@link HostManager} to get server hosts from.
+     * @param mapperRegistry The {@link JsonMapperRegistry} to serialize and deserialize values with.
+     * @param httpClient The HttpClient to use.
+     * @param metrics The {@link ConnectionMetrics} to record every request into, or null to not record metrics.
+     */
+    public HTTPConnection(HostManager hostManager, JsonMapperRegistry mapperRegistry, HttpClient httpClient, ConnectionMetrics metrics) {
         ResteasyProviderFactory providerFactory = ResteasyProviderFactory.getInstance();
         this.hostManager = hostManager;
-        this.requestFactory = new ClientRequestFactory(new ApacheHttpClientExecutor(httpClient), providerFactory);
+        this.executor = new MeteredClientExecutor(httpClient);
+        this.requestFactory = new ClientRequestFactory(executor, providerFactory);
+        this.metrics = metrics;
+        this.valuesReader = new JsonValuesReader(mapperRegistry);
+        this.objectReader = new JsonObjectReader(mapperRegistry);
         try {
             // Registration order matters: JsonObjectWriter must come last because writes all:
             providerFactory.addMessageBodyWriter(new JsonParametersWriter());
-            providerFactory.addMessageBodyWriter(new JsonValuesWriter(descriptors));
-            providerFactory.addMessageBodyWriter(new JsonObjectWriter(descriptors));
+            providerFactory.addMessageBodyWriter(new JsonValuesWriter(mapperRegistry));
+            providerFactory.addMessageBodyWriter(new JsonObjectWriter(mapperRegistry));
             // Registration order matters: JsonObjectReader must come last because reads all:
             providerFactory.addMessageBodyReader(new JsonClusterStatsReader());
-            providerFactory.addMessageBodyReader(new JsonValuesReader(descriptors));
-            providerFactory.addMessageBodyReader(new JsonObjectReader(descriptors));
+            providerFactory.addMessageBodyReader(valuesReader);
+            providerFactory.addMessageBodyReader(objectReader);
 
             registerProviders(providerFactory);
         } catch (Exception ex) {
@@ -104,6 +138,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public ClusterStats getClusterStats() throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<ClusterStats> response = null;
@@ -116,10 +151,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.GET_CLUSTER_STATS, null, e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.GET_CLUSTER_STATS, null, getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.GET_CLUSTER_STATS, null, started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -129,6 +165,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public void clearBucket(String bucket) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<String> response = null;
@@ -139,10 +176,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.CLEAR_BUCKET, bucket, e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.CLEAR_BUCKET, bucket, getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.CLEAR_BUCKET, bucket, started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -152,6 +190,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public Set<String> getBuckets() throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Set<String>> response = null;
@@ -164,10 +203,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.GET_BUCKETS, null, e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.GET_BUCKETS, null, getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.GET_BUCKETS, null, started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -177,6 +217,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> void putValue(KeyOperation.Context context, T value) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse response = null;
@@ -187,10 +228,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.PUT_VALUE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.PUT_VALUE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.PUT_VALUE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -200,22 +242,22 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> void putValue(ConditionalOperation.Context context, T value) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path(context.getKey()).queryParam("predicate", context.getPredicate()).
-                    build().toString();
-            request = requestFactory.createRequest(requestUri);
+            request = getConditionalRequest(serverHost, context);
             response = request.body(JSON_CONTENT_TYPE, value).put();
             if (!response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
                 throw exceptionTranslator.translate(Operation.CONDITIONAL, response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.CONDITIONAL_PUT_VALUE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.CONDITIONAL_PUT_VALUE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.CONDITIONAL_PUT_VALUE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -225,6 +267,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T getValue(KeyOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<T> response = null;
@@ -232,15 +275,19 @@ public class HTTPConnection implements Connection {
             request = getKeyRequest(serverHost, context.getBucket(), context.getKey());
             response = request.get();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                if (context.getFields() != null) {
+                    return objectReader.readProjected(type, context.getFields(), openEntityStream(response));
+                }
                 return response.getEntity(type);
             } else {
                 throw exceptionTranslator.translate(Operation.GET, response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.GET_VALUE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.GET_VALUE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.GET_VALUE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -250,13 +297,12 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T getValue(ConditionalOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<T> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path(context.getKey()).queryParam("predicate", context.getPredicate()).
-                    build().toString();
-            request = requestFactory.createRequest(requestUri);
+            request = getConditionalRequest(serverHost, context);
             response = request.get();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
                 return response.getEntity(type);
@@ -264,10 +310,132 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.translate(Operation.CONDITIONAL, response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), started);
+            if (response != null) {
+                response.releaseConnection();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T getValueIfPresent(KeyOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<T> response = null;
+        try {
+            request = getKeyRequest(serverHost, context.getBucket(), context.getKey());
+            response = request.get();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                if (context.getFields() != null) {
+                    return objectReader.readProjected(type, context.getFields(), openEntityStream(response));
+                }
+                return response.getEntity(type);
+            } else if (response.getStatus() == 404) {
+                // Missing key: do not read the error message.
+                return null;
+            } else {
+                throw exceptionTranslator.translate(Operation.GET, response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.GET_VALUE, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.GET_VALUE, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            record(OperationType.GET_VALUE, context.getBucket(), started);
+            if (response != null) {
+                response.releaseConnection();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T getValueIfPresent(ConditionalOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<T> response = null;
+        try {
+            request = getConditionalRequest(serverHost, context);
+            response = request.get();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                return response.getEntity(type);
+            } else if (response.getStatus() == 404 || response.getStatus() == 409) {
+                // Missing key or unsatisfied condition: do not read the error message.
+                return null;
+            } else {
+                throw exceptionTranslator.translate(Operation.CONDITIONAL, response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            record(OperationType.CONDITIONAL_GET_VALUE, context.getBucket(), started);
+            if (response != null) {
+                response.releaseConnection();
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(KeyOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<?> response = null;
+        try {
+            request = getKeyRequest(serverHost, context.getBucket(), context.getKey());
+            // HEAD requests are served by GET resources without transferring the value:
+            response = request.head();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                return true;
+            } else if (response.getStatus() == 404) {
+                return false;
+            } else {
+                throw exceptionTranslator.translate(Operation.GET, response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.EXISTS, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.EXISTS, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            record(OperationType.EXISTS, context.getBucket(), started);
+            if (response != null) {
+                response.releaseConnection();
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(ConditionalOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<?> response = null;
+        try {
+            request = getConditionalRequest(serverHost, context);
+            // HEAD requests are served by GET resources without transferring the value:
+            response = request.head();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                return true;
+            } else if (response.getStatus() == 404 || response.getStatus() == 409) {
+                return false;
+            } else {
+                throw exceptionTranslator.translate(Operation.CONDITIONAL, response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.CONDITIONAL_EXISTS, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.CONDITIONAL_EXISTS, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            record(OperationType.CONDITIONAL_EXISTS, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -277,6 +445,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public void removeValue(KeyOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse response = null;
@@ -287,10 +456,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.REMOVE_VALUE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.REMOVE_VALUE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.REMOVE_VALUE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -300,6 +470,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> Values<T> getAllValues(ValuesOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Values<T>> response = null;
@@ -307,15 +478,22 @@ public class HTTPConnection implements Connection {
             request = getBucketRequest(serverHost, context.getBucket()).queryParameter("limit", context.getLimit());
             response = request.get();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
-                return response.getEntity(Values.class, type);
+                if (context.isOffHeap()) {
+                    return valuesReader.readOffHeap(type, openEntityStream(response));
+                }
+                if (context.getSpillThreshold() > 0) {
+                    return valuesReader.readSpilling(type, context.getSpillThreshold(), openEntityStream(response));
+                }
+                return response.getEntity(valuesType(context.isLazy()), type);
             } else {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.GET_ALL_VALUES, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.GET_ALL_VALUES, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.GET_ALL_VALUES, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -325,6 +503,7 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> Values<T> queryByRange(RangeOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Values<T>> response = null;
@@ -333,23 +512,66 @@ public class HTTPConnection implements Connection {
             request = requestFactory.createRequest(requestUri);
             response = request.accept(JSON_CONTENT_TYPE).get();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
-                return response.getEntity(Values.class, type);
+                if (context.getFields() != null) {
+                    return valuesReader.readProjected(type, context.getFields(), openEntityStream(response));
+                }
+                if (context.isOffHeap()) {
+                    return valuesReader.readOffHeap(type, openEntityStream(response));
+                }
+                if (context.getSpillThreshold() > 0) {
+                    return valuesReader.readSpilling(type, context.getSpillThreshold(), openEntityStream(response));
+                }
+                return response.getEntity(valuesType(context.isLazy()), type);
             } else {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.QUERY_BY_RANGE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.QUERY_BY_RANGE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.QUERY_BY_RANGE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
         }
     }
 
+    @Override
+    public <T> ValuesIterator<T> streamByRange(RangeOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<?> response = null;
+        ValuesIterator<T> stream = null;
+        try {
+            String requestUri = buildRangeURI(context, serverHost);
+            request = requestFactory.createRequest(requestUri);
+            response = request.accept(JSON_CONTENT_TYPE).get();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                stream = openValuesStream(response, type, OperationType.STREAM_BY_RANGE, context.getBucket(), started);
+                return stream;
+            } else {
+                throw exceptionTranslator.generalException(response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.STREAM_BY_RANGE, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.STREAM_BY_RANGE, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            // Opened streams are recorded once closed:
+            if (stream == null) {
+                record(OperationType.STREAM_BY_RANGE, context.getBucket(), started);
+                if (response != null) {
+                    response.releaseConnection();
+                }
+            }
+        }
+    }
+
     @Override
     public Set<String> removeByRange(RangeOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<String> response = null;
@@ -358,15 +580,16 @@ public class HTTPConnection implements Connection {
             request = requestFactory.createRequest(requestUri);
             response = request.accept(JSON_CONTENT_TYPE).delete();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
-                return response.getEntity(HashSet.class);
+                return response.getEntity(CompactKeySet.class);
             } else {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.REMOVE_BY_RANGE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.REMOVE_BY_RANGE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.REMOVE_BY_RANGE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -376,39 +599,85 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> Values<T> queryByPredicate(PredicateOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Values<T>> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("predicate").queryParam("predicate", context.getPredicate()).build().
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("predicate").query("predicate", context.getPredicate()).
                     toString();
 
             request = requestFactory.createRequest(requestUri);
             response = request.accept(JSON_CONTENT_TYPE).get();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
-                return response.getEntity(Values.class, type);
+                if (context.getFields() != null) {
+                    return valuesReader.readProjected(type, context.getFields(), openEntityStream(response));
+                }
+                if (context.isOffHeap()) {
+                    return valuesReader.readOffHeap(type, openEntityStream(response));
+                }
+                if (context.getSpillThreshold() > 0) {
+                    return valuesReader.readSpilling(type, context.getSpillThreshold(), openEntityStream(response));
+                }
+                return response.getEntity(valuesType(context.isLazy()), type);
             } else {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.QUERY_BY_PREDICATE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.QUERY_BY_PREDICATE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.QUERY_BY_PREDICATE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
         }
     }
 
+    @Override
+    public <T> ValuesIterator<T> streamByPredicate(PredicateOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<?> response = null;
+        ValuesIterator<T> stream = null;
+        try {
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("predicate").query("predicate", context.getPredicate()).
+                    toString();
+
+            request = requestFactory.createRequest(requestUri);
+            response = request.accept(JSON_CONTENT_TYPE).get();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                stream = openValuesStream(response, type, OperationType.STREAM_BY_PREDICATE, context.getBucket(), started);
+                return stream;
+            } else {
+                throw exceptionTranslator.generalException(response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.STREAM_BY_PREDICATE, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.STREAM_BY_PREDICATE, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            // Opened streams are recorded once closed:
+            if (stream == null) {
+                record(OperationType.STREAM_BY_PREDICATE, context.getBucket(), started);
+                if (response != null) {
+                    response.releaseConnection();
+                }
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T queryByMapReduce(MapReduceOperation.Context context, Class<T> returnType) {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<T> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("mapReduce").build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("mapReduce").toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, context.getQuery()).post();
             if (!response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
@@ -416,10 +685,11 @@ public class HTTPConnection implements Connection {
             }
             return response.getEntity(returnType);
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.QUERY_BY_MAP_REDUCE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.QUERY_BY_MAP_REDUCE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.QUERY_BY_MAP_REDUCE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -429,22 +699,24 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public void exportBackup(BackupOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("export").queryParam("destination", context.getFile()).
-                    queryParam("secret", context.getSecretKey()).build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("export").query("destination", context.getFile()).
+                    query("secret", context.getSecretKey()).toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, "").post();
             if (!response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.EXPORT_BACKUP, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.EXPORT_BACKUP, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.EXPORT_BACKUP, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -454,22 +726,24 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public void importBackup(BackupOperation.Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("import").queryParam("source", context.getFile()).queryParam("secret", context.
-                    getSecretKey()).build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("import").query("source", context.getFile()).query("secret", context.
+                    getSecretKey()).toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, "").post();
             if (!response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.IMPORT_BACKUP, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.IMPORT_BACKUP, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.IMPORT_BACKUP, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -479,12 +753,13 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T executeUpdate(UpdateOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<T> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path(context.getKey()).path("update").queryParam("function", context.
-                    getFunction()).queryParam("timeout", context.getTimeOut()).build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path(context.getKey()).path("update").query("function", context.
+                    getFunction()).query("timeout", context.getTimeOut()).toString();
 
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, context.getParameters()).post();
@@ -494,10 +769,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.translate(Operation.UPDATE, response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.EXECUTE_UPDATE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.EXECUTE_UPDATE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.EXECUTE_UPDATE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -507,11 +783,12 @@ public class HTTPConnection implements Connection {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T executeMerge(MergeOperation.Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<T> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path(context.getKey()).path("merge").build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path(context.getKey()).path("merge").toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, context.getDescriptor()).post();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
@@ -520,10 +797,11 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.translate(Operation.MERGE, response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.EXECUTE_MERGE, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.EXECUTE_MERGE, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.EXECUTE_MERGE, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
@@ -532,36 +810,74 @@ public class HTTPConnection implements Connection {
 
     @Override
     public <T> Values<T> bulkGet(Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Values<T>> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("bulk").path("get").build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("bulk").path("get").toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, context.getKeys()).post();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                if (context.getFields() != null) {
+                    return valuesReader.readProjected(type, context.getFields(), openEntityStream(response));
+                }
                 return response.getEntity(Values.class, type);
             } else {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.BULK_GET, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.BULK_GET, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.BULK_GET, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
         }
     }
 
+    @Override
+    public <T> ValuesIterator<T> streamBulkGet(Context context, Class<T> type) throws TerrastoreClientException {
+        long started = System.nanoTime();
+        String serverHost = hostManager.getHost();
+        ClientRequest request = null;
+        ClientResponse<?> response = null;
+        ValuesIterator<T> stream = null;
+        try {
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("bulk").path("get").toString();
+            request = requestFactory.createRequest(requestUri);
+            response = request.body(JSON_CONTENT_TYPE, context.getKeys()).post();
+            if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
+                stream = openValuesStream(response, type, OperationType.STREAM_BULK_GET, context.getBucket(), started);
+                return stream;
+            } else {
+                throw exceptionTranslator.generalException(response);
+            }
+        } catch (TerrastoreClientException e) {
+            throw recordError(OperationType.STREAM_BULK_GET, context.getBucket(), e);
+        } catch (Exception e) {
+            throw recordError(OperationType.STREAM_BULK_GET, context.getBucket(), getClientSideException(serverHost, e));
+        } finally {
+            // Opened streams are recorded once closed:
+            if (stream == null) {
+                record(OperationType.STREAM_BULK_GET, context.getBucket(), started);
+                if (response != null) {
+                    response.releaseConnection();
+                }
+            }
+        }
+    }
+
     @Override
     public Set<String> bulkPut(Context context) throws TerrastoreClientException {
+        long started = System.nanoTime();
         String serverHost = hostManager.getHost();
         ClientRequest request = null;
         ClientResponse<Set<String>> response = null;
         try {
-            String requestUri = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("bulk").path("put").build().toString();
+            String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path("bulk").path("put").toString();
             request = requestFactory.createRequest(requestUri);
             response = request.body(JSON_CONTENT_TYPE, context.getValues()).post();
             if (response.getResponseStatus().getFamily().equals(Response.Status.Family.SUCCESSFUL)) {
@@ -570,51 +886,92 @@ public class HTTPConnection implements Connection {
                 throw exceptionTranslator.generalException(response);
             }
         } catch (TerrastoreClientException e) {
-            throw e;
+            throw recordError(OperationType.BULK_PUT, context.getBucket(), e);
         } catch (Exception e) {
-            throw getClientSideException(serverHost, e);
+            throw recordError(OperationType.BULK_PUT, context.getBucket(), getClientSideException(serverHost, e));
         } finally {
+            record(OperationType.BULK_PUT, context.getBucket(), started);
             if (response != null) {
                 response.releaseConnection();
             }
         }
     }
 
+    private Class<? extends Values> valuesType(boolean lazy) {
+        return lazy ? LazyValues.class : Values.class;
+    }
+
+    private InputStream openEntityStream(ClientResponse<?> response) throws IOException {
+        return ((BaseClientResponse<?>) response).getStreamFactory().getInputStream();
+    }
+
+    private <T> ValuesIterator<T> openValuesStream(ClientResponse<?> response, Class<T> type, OperationType operation, String bucket, long started) throws IOException {
+        // Streams are read after this thread executes other requests, so they need their own stream factory:
+        executor.detach(response);
+        StreamResource resource = new StreamResource(response, operation, bucket, started);
+        ValuesIterator<T> stream = valuesReader.readStream(type, openEntityStream(response), resource);
+        executor.takeResponseSize();
+        resource.opened(executor.takeRequestSize());
+        return stream;
+    }
+
     private String buildRangeURI(RangeOperation.Context context,
             String serverHost) {
-        UriBuilder uriBuilder = UriBuilder.fromUri(serverHost).path(context.getBucket()).path("range").queryParam("startKey", context.getStartKey()).
-                queryParam("limit", context.getLimit()).queryParam("timeToLive", context.getTimeToLive());
+        RequestUris.Builder uriBuilder = requestUris.host(serverHost).bucket(context.getBucket()).path("range").query("startKey", context.getStartKey()).
+                query("limit", context.getLimit()).query("timeToLive", context.getTimeToLive());
         if (null != context.getComparator()) {
-            uriBuilder.queryParam("comparator", context.getComparator());
+            uriBuilder.query("comparator", context.getComparator());
         }
         if (null != context.getEndKey()) {
-            uriBuilder.queryParam("endKey", context.getEndKey());
+            uriBuilder.query("endKey", context.getEndKey());
         }
         if (null != context.getPredicate()) {
-            uriBuilder.queryParam("predicate", context.getPredicate());
+            uriBuilder.query("predicate", context.getPredicate());
         }
-        String requestUri = uriBuilder.build().toString();
+        String requestUri = uriBuilder.toString();
         return requestUri;
     }
 
     private ClientRequest getStatsRequest(String serverHost, String stats) {
-        String requestUri = UriBuilder.fromUri(serverHost).path("_stats").path(stats).build().toString();
+        String requestUri = requestUris.host(serverHost).path("_stats").path(stats).toString();
         ClientRequest request = requestFactory.createRequest(requestUri);
         return request.accept(JSON_CONTENT_TYPE);
     }
 
     private ClientRequest getKeyRequest(String serverHost, String bucket, String key) {
-        String requestUri = UriBuilder.fromUri(serverHost).path(bucket).path(key).build().toString();
+        String requestUri = requestUris.host(serverHost).bucket(bucket).path(key).toString();
         ClientRequest request = requestFactory.createRequest(requestUri);
         return request.accept(JSON_CONTENT_TYPE);
     }
 
+    private ClientRequest getConditionalRequest(String serverHost, ConditionalOperation.Context context) {
+        String requestUri = requestUris.host(serverHost).bucket(context.getBucket()).path(context.getKey()).query("predicate", context.getPredicate()).
+                toString();
+        return requestFactory.createRequest(requestUri);
+    }
+
     private ClientRequest getBucketRequest(String serverHost, String bucket) {
-        String requestUri = UriBuilder.fromUri(serverHost).path(bucket).build().toString();
+        String requestUri = requestUris.host(serverHost).bucket(bucket).toString();
         ClientRequest request = requestFactory.createRequest(requestUri);
         return request.accept(JSON_CONTENT_TYPE);
     }
 
+    private void record(OperationType type, String bucket, long started) {
+        // Sizes must be taken anyway, to not leak them into the next request:
+        long requestSize = executor.takeRequestSize();
+        long responseSize = executor.takeResponseSize();
+        if (metrics != null) {
+            metrics.onRequest(type, bucket, System.nanoTime() - started, requestSize, responseSize);
+        }
+    }
+
+    private <E extends TerrastoreClientException> E recordError(OperationType type, String bucket, E error) {
+        if (metrics != null) {
+            metrics.onError(type, bucket, error.getClass());
+        }
+        return error;
+    }
+
     private TerrastoreClientException getClientSideException(String serverHost, Exception e) {
         if (e instanceof ConnectException) {
             LOG.error(e.getMessage(), e);
@@ -625,4 +982,66 @@ public class HTTPConnection implements Connection {
         return new TerrastoreClientException("Could not service your request: " + e, e);
     }
 
+    /**
+     * Streamed response resource, recording its request once both opened and closed, so that the whole streaming
+     * time and all read bytes are recorded.
+     */
+    private class StreamResource implements JsonValuesIterator.Resource {
+
+        private final ClientResponse<?> response;
+        private final OperationType operation;
+        private final String bucket;
+        private final long started;
+        private long requestSize = -1;
+        private boolean opened;
+        private boolean closed;
+
+        public StreamResource(ClientResponse<?> response, OperationType operation, String bucket, long started) {
+            this.response = response;
+            this.operation = operation;
+            this.bucket = bucket;
+            this.started = started;
+        }
+
+        @Override
+        public void release() throws IOException {
+            try {
+                response.releaseConnection();
+            } finally {
+                closed();
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            try {
+                // Releasing would read all remaining values before giving the connection back:
+                MeteredClientExecutor.abort(response);
+            } finally {
+                closed();
+            }
+        }
+
+        public synchronized void opened(long requestSize) {
+            this.requestSize = requestSize;
+            this.opened = true;
+            if (closed) {
+                record();
+            }
+        }
+
+        private synchronized void closed() {
+            this.closed = true;
+            if (opened) {
+                record();
+            }
+        }
+
+        private void record() {
+            if (metrics != null) {
+                metrics.onRequest(operation, bucket, System.nanoTime() - started, requestSize, MeteredClientExecutor.getResponseSize(response));
+            }
+        }
+    }
+
 }
@@ -19,17 +19,20 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 
 import terrastore.client.connection.Connection;
 import terrastore.client.connection.ConnectionFactory;
+import terrastore.client.connection.ConnectionMetrics;
 import terrastore.client.connection.HostManager;
 import terrastore.client.connection.TerrastoreConnectionException;
+import terrastore.client.mapping.JsonMapperRegistry;
 import terrastore.client.mapping.JsonObjectDescriptor;
 
 /**
- * HTTP connection factory based on org.apache.commons.httpclient.HttpClient.
+ * HTTP connection factory based on org.apache.commons.httpclient.HttpClient.<br>
+ * The connection pool state can be monitored when the HttpClient uses a {@link MonitoredConnectionManager},
+ * as the default one does: see {@link #getConnectionPool()}.
  *
  * @author Sven Johansson
  * @author Sergio Bossa
@@ -37,18 +40,62 @@ import terrastore.client.mapping.JsonObjectDescriptor;
 public class HTTPConnectionFactory implements ConnectionFactory {
 
     private final HttpClient client;
+    private final List<Class<?>> warmUpTypes;
+    private final ConnectionMetrics metrics;
 
     public HTTPConnectionFactory(HttpClient client) {
+        this(client, new ArrayList<Class<?>>(0));
+    }
+
+    /**
+     * Create a connection factory whose connections eagerly build Json serializers and deserializers
+     * for the given types, other than the ones declared by {@link JsonObjectDescriptor}s.
+     *
+     * @param client The HttpClient to use.
+     * @param warmUpTypes The types whose serializers and deserializers must be eagerly built.
+     */
+    public HTTPConnectionFactory(HttpClient client, List<Class<?>> warmUpTypes) {
+        this(client, warmUpTypes, null);
+    }
+
+    /**
+     * Create a connection factory whose connections record metrics about every request.
+     *
+     * @param client The HttpClient to use.
+     * @param warmUpTypes The types whose serializers and deserializers must be eagerly built.
+     * @param metrics The {@link ConnectionMetrics} to record requests into, or null to not record metrics.
+     */
+    public HTTPConnectionFactory(HttpClient client, List<Class<?>> warmUpTypes, ConnectionMetrics metrics) {
         this.client = client;
+        this.warmUpTypes = warmUpTypes;
+        this.metrics = metrics;
     }
 
     public HTTPConnectionFactory() {
-        HttpConnectionManagerParams httpParams = new HttpConnectionManagerParams();
-        httpParams.setDefaultMaxConnectionsPerHost(Runtime.getRuntime().availableProcessors() * 10);
-        httpParams.setMaxTotalConnections(Runtime.getRuntime().availableProcessors() * 10);
-        HttpConnectionManager httpManager = new MultiThreadedHttpConnectionManager();
-        httpManager.setParams(httpParams);
-        this.client = new HttpClient(httpManager);
+        this((ConnectionMetrics) null);
+    }
+
+    /**
+     * Create a connection factory with a default HttpClient, whose connections record metrics about every request.
+     *
+     * @param metrics The {@link ConnectionMetrics} to record requests into.
+     */
+    public HTTPConnectionFactory(ConnectionMetrics metrics) {
+        this(makeDefaultClient(), new ArrayList<Class<?>>(0), metrics);
+    }
+
+    /**
+     * Get the connection pool management interface, to be registered into an MBean server.
+     *
+     * @return The {@link ConnectionPoolMXBean}, or null if the HttpClient doesn't use a {@link MonitoredConnectionManager}.
+     */
+    public ConnectionPoolMXBean getConnectionPool() {
+        HttpConnectionManager httpManager = client.getHttpConnectionManager();
+        if (httpManager instanceof ConnectionPoolMXBean) {
+            return (ConnectionPoolMXBean) httpManager;
+        } else {
+            return null;
+        }
     }
 
     @Override
@@ -56,6 +103,15 @@ public class HTTPConnectionFactory implements ConnectionFactory {
         List<JsonObjectDescriptor<?>> jsonDescriptors = new ArrayList<JsonObjectDescriptor<?>>();
         jsonDescriptors.addAll(descriptors);
         jsonDescriptors.add(new ErrorMessageDescriptor());
-        return new HTTPConnection(hostManager, jsonDescriptors);
+        return new HTTPConnection(hostManager, new JsonMapperRegistry(jsonDescriptors, warmUpTypes), client, metrics);
+    }
+
+    private static HttpClient makeDefaultClient() {
+        HttpConnectionManagerParams httpParams = new HttpConnectionManagerParams();
+        httpParams.setDefaultMaxConnectionsPerHost(Runtime.getRuntime().availableProcessors() * 10);
+        httpParams.setMaxTotalConnections(Runtime.getRuntime().availableProcessors() * 10);
+        HttpConnectionManager httpManager = new MonitoredConnectionManager();
+        httpManager.setParams(httpParams);
+        return new HttpClient(httpManager);
     }
 }
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.jboss.resteasy.client.ClientRequest;
+import org.jboss.resteasy.client.ClientResponse;
+import org.jboss.resteasy.client.core.BaseClientResponse;
+import org.jboss.resteasy.client.core.BaseClientResponse.BaseClientResponseStreamFactory;
+import org.jboss.resteasy.client.core.executors.ApacheHttpClientExecutor;
+
+/**
+ * {@link ApacheHttpClientExecutor} keeping track of the request and response body sizes of the last request
+ * executed by each thread.<br>
+ * Response sizes are taken by counting the bytes read from the response body, so chunked responses are sized too,
+ * falling back to the Content-Length header for unread bodies.<br>
+ * Responses can also be aborted by {@link #abort(ClientResponse)}, so that unread response bodies don't need to be
+ * transferred just to release the connection.<br>
+ * Sizes are tracked by a stream factory and counting stream allocated once per thread, and reused by all requests
+ * it executes, which must be read and released by the same thread before executing the next one: responses
+ * read after that, as streamed ones, must be given their own stream factory by {@link #detach(ClientResponse)}.
+ *
+ * @author Sergio Bossa
+ */
+class MeteredClientExecutor extends ApacheHttpClientExecutor {
+
+    private final ThreadLocal<MeteredStreamFactory> streamFactories = new ThreadLocal<MeteredStreamFactory>() {
+
+        @Override
+        protected MeteredStreamFactory initialValue() {
+            return new MeteredStreamFactory();
+        }
+    };
+
+    public MeteredClientExecutor(HttpClient httpClient) {
+        super(httpClient);
+    }
+
+    @Override
+    public ClientResponse<?> execute(ClientRequest request) throws Exception {
+        MeteredStreamFactory streamFactory = streamFactories.get();
+        try {
+            BaseClientResponse<?> response = (BaseClientResponse<?>) super.execute(request);
+            streamFactory.attach(response.getStreamFactory(), contentLength(response));
+            response.setStreamFactory(streamFactory);
+            return response;
+        } catch (Exception ex) {
+            streamFactory.detach();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void loadHttpMethod(ClientRequest request, HttpMethodBase httpMethod) throws Exception {
+        super.loadHttpMethod(request, httpMethod);
+        MeteredStreamFactory streamFactory = streamFactories.get();
+        streamFactory.httpMethod = httpMethod;
+        if (httpMethod instanceof EntityEnclosingMethod) {
+            RequestEntity entity = ((EntityEnclosingMethod) httpMethod).getRequestEntity();
+            if (entity != null) {
+                streamFactory.requestSize = entity.getContentLength();
+            }
+        }
+    }
+
+    /**
+     * Get and clear the request body size of the last request executed by the current thread, or -1 if unknown.
+     */
+    public long takeRequestSize() {
+        MeteredStreamFactory streamFactory = streamFactories.get();
+        long size = streamFactory.requestSize;
+        streamFactory.requestSize = -1;
+        return size;
+    }
+
+    /**
+     * Get and clear the response body size of the last request executed by the current thread, or -1 if unknown:
+     * only bytes read so far are counted, so it must be taken after reading the response.
+     */
+    public long takeResponseSize() {
+        MeteredStreamFactory streamFactory = streamFactories.get();
+        long size = streamFactory.getResponseSize();
+        streamFactory.contentLength = -1;
+        streamFactory.opened = false;
+        return size;
+    }
+
+    /**
+     * Give the given response, just executed by the current thread and not read yet, its own stream factory,
+     * so that it can be read and released by any thread after the current one executes other requests.
+     */
+    public void detach(ClientResponse<?> response) {
+        MeteredStreamFactory streamFactory = streamFactories.get();
+        MeteredStreamFactory detached = new MeteredStreamFactory();
+        detached.httpMethod = streamFactory.httpMethod;
+        detached.attach(streamFactory.delegate, streamFactory.contentLength);
+        ((BaseClientResponse<?>) response).setStreamFactory(detached);
+        streamFactory.detach();
+    }
+
+    /**
+     * Get the body size of the given response, counting only bytes read so far, or -1 if unknown.
+     */
+    public static long getResponseSize(ClientResponse<?> response) {
+        BaseClientResponseStreamFactory streamFactory = ((BaseClientResponse<?>) response).getStreamFactory();
+        if (streamFactory instanceof MeteredStreamFactory) {
+            return ((MeteredStreamFactory) streamFactory).getResponseSize();
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Abort the given response, closing its connection rather than reading any unread response body,
+     * and then release it.
+     */
+    public static void abort(ClientResponse<?> response) {
+        BaseClientResponseStreamFactory streamFactory = ((BaseClientResponse<?>) response).getStreamFactory();
+        if (streamFactory instanceof MeteredStreamFactory) {
+            ((MeteredStreamFactory) streamFactory).abort();
+        }
+        response.releaseConnection();
+    }
+
+    private long contentLength(ClientResponse<?> response) {
+        String length = response.getHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        } else {
+            return -1;
+        }
+    }
+
+    private static class MeteredStreamFactory implements BaseClientResponseStreamFactory {
+
+        private final CountingInputStream stream = new CountingInputStream();
+        private volatile BaseClientResponseStreamFactory delegate;
+        private volatile HttpMethodBase httpMethod;
+        private volatile long contentLength = -1;
+        private volatile long requestSize = -1;
+        private volatile boolean opened;
+
+        public void attach(BaseClientResponseStreamFactory delegate, long contentLength) {
+            this.delegate = delegate;
+            this.contentLength = contentLength;
+            this.opened = false;
+        }
+
+        public void detach() {
+            // Don't hold the last response, nor its buffers, until the next request:
+            delegate = null;
+            httpMethod = null;
+            stream.clear();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (!opened) {
+                InputStream body = delegate.getInputStream();
+                if (body == null) {
+                    return null;
+                }
+                stream.open(body);
+                opened = true;
+            }
+            return stream;
+        }
+
+        @Override
+        public void performReleaseConnection() {
+            if (delegate != null) {
+                try {
+                    delegate.performReleaseConnection();
+                } finally {
+                    detach();
+                }
+            }
+        }
+
+        public void abort() {
+            HttpMethodBase current = httpMethod;
+            if (current != null) {
+                current.abort();
+            }
+        }
+
+        public long getResponseSize() {
+            return opened ? stream.getCount() : contentLength;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private volatile long count;
+        private long markedCount;
+
+        public CountingInputStream() {
+            super(null);
+        }
+
+        public void open(InputStream in) {
+            this.in = in;
+            this.count = 0;
+            this.markedCount = 0;
+        }
+
+        public void clear() {
+            // Only drop the stream, as its count can still be taken:
+            this.in = null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = in.read();
+            if (result != -1) {
+                count++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = in.read(buffer, offset, length);
+            if (result != -1) {
+                count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = in.skip(n);
+            count += result;
+            return result;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            in.mark(readLimit);
+            markedCount = count;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            in.reset();
+            count = markedCount;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+/**
+ * {@link MultiThreadedHttpConnectionManager} keeping track of leased, idle and pending connections,
+ * and of the time spent waiting to acquire them, by host.<br>
+ * Its state can be monitored by registering it into an MBean server, as a {@link ConnectionPoolMXBean}.<br>
+ * Connections never released, and reclaimed by the garbage collector, are still counted as leased.
+ *
+ * @author Sergio Bossa
+ */
+public class MonitoredConnectionManager extends MultiThreadedHttpConnectionManager implements ConnectionPoolMXBean {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    //
+    private final ConcurrentMap<String, HostStats> hosts = new ConcurrentHashMap<String, HostStats>();
+
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) throws ConnectionPoolTimeoutException {
+        if (hostConfiguration == null) {
+            return super.getConnectionWithTimeout(hostConfiguration, timeout);
+        }
+        HostStats stats = getOrCreate(hostConfiguration);
+        long started = System.nanoTime();
+        stats.pending.incrementAndGet();
+        try {
+            HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            stats.leased.incrementAndGet();
+            stats.acquired(System.nanoTime() - started);
+            return connection;
+        } finally {
+            stats.pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void releaseConnection(HttpConnection connection) {
+        super.releaseConnection(connection);
+        HostStats stats = hosts.get(keyOf(connection.getHost(), connection.getPort()));
+        if (stats != null) {
+            int leased = stats.leased.get();
+            while (leased > 0 && !stats.leased.compareAndSet(leased, leased - 1)) {
+                leased = stats.leased.get();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getLeasedConnections() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            result.put(host.getKey(), host.getValue().leased.get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> getIdleConnections() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            // Pooled connections include leased ones:
+            int pooled = getConnectionsInPool(host.getValue().configuration);
+            result.put(host.getKey(), Math.max(pooled - host.getValue().leased.get(), 0));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> getPendingConnections() {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            result.put(host.getKey(), host.getValue().pending.get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getAcquiredConnections() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            result.put(host.getKey(), host.getValue().acquired.get());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getAverageWaitTime() {
+        Map<String, Double> result = new HashMap<String, Double>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            long acquired = host.getValue().acquired.get();
+            result.put(host.getKey(), acquired > 0 ? host.getValue().totalWait.get() / NANOS_PER_MILLI / acquired : 0.0);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getMaxWaitTime() {
+        Map<String, Double> result = new HashMap<String, Double>();
+        for (Map.Entry<String, HostStats> host : hosts.entrySet()) {
+            result.put(host.getKey(), host.getValue().maxWait.get() / NANOS_PER_MILLI);
+        }
+        return result;
+    }
+
+    @Override
+    public void resetWaitTimes() {
+        for (HostStats stats : hosts.values()) {
+            stats.acquired.set(0);
+            stats.totalWait.set(0);
+            stats.maxWait.set(0);
+        }
+    }
+
+    private HostStats getOrCreate(HostConfiguration hostConfiguration) {
+        String key = keyOf(hostConfiguration.getHost(), hostConfiguration.getPort());
+        HostStats stats = hosts.get(key);
+        if (stats == null) {
+            HostStats created = new HostStats(new HostConfiguration(hostConfiguration));
+            stats = hosts.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private String keyOf(String host, int port) {
+        return host + ":" + port;
+    }
+
+    private static class HostStats {
+
+        private final HostConfiguration configuration;
+        private final AtomicInteger leased = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong maxWait = new AtomicLong();
+
+        public HostStats(HostConfiguration configuration) {
+            this.configuration = configuration;
+        }
+
+        public void acquired(long wait) {
+            acquired.incrementAndGet();
+            totalWait.addAndGet(wait);
+            long current = maxWait.get();
+            while (wait > current && !maxWait.compareAndSet(current, wait)) {
+                current = maxWait.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * Builds request URIs by appending pre-encoded segments to cached per-host prefixes, rather than
+ * re-parsing the host URI through a {@link UriBuilder} on every request.<br>
+ * Path segments and query parameters are encoded the same way as {@link UriBuilder#path(String)}
+ * and {@link UriBuilder#queryParam(String, Object[])} do: slashes in path segments are kept, and already
+ * percent-encoded sequences are preserved.<br>
+ * Encoded bucket names are cached too, up to {@link #MAX_CACHED_BUCKETS} distinct buckets.
+ *
+ * @author Sergio Bossa
+ */
+class RequestUris {
+
+    static final int MAX_CACHED_BUCKETS = 1024;
+    //
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] PATH_SAFE = new boolean[128];
+    private static final boolean[] QUERY_SAFE = new boolean[128];
+    //
+    private final ConcurrentMap<String, String> prefixes = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, String> buckets = new ConcurrentHashMap<String, String>();
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c : "-._~*".toCharArray()) {
+            PATH_SAFE[c] = QUERY_SAFE[c] = true;
+        }
+        for (char c : "!$&'()+,;=:@/".toCharArray()) {
+            PATH_SAFE[c] = true;
+        }
+        QUERY_SAFE['?'] = true;
+    }
+
+    /**
+     * Start building a request URI for the given server host.
+     */
+    public Builder host(String serverHost) {
+        String prefix = prefixes.get(serverHost);
+        if (prefix == null) {
+            prefix = UriBuilder.fromUri(serverHost).build().toString();
+            if (prefix.endsWith("/")) {
+                prefix = prefix.substring(0, prefix.length() - 1);
+            }
+            prefixes.put(serverHost, prefix);
+        }
+        return new Builder(prefix);
+    }
+
+    private String encodeBucket(String bucket) {
+        String encoded = buckets.get(bucket);
+        if (encoded == null) {
+            encoded = encode(bucket, PATH_SAFE, false);
+            if (buckets.size() < MAX_CACHED_BUCKETS) {
+                buckets.put(bucket, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    static String encode(String value, boolean[] safe, boolean spaceAsPlus) {
+        int length = value.length();
+        int i = 0;
+        while (i < length && isSafe(value, i, safe)) {
+            i++;
+        }
+        if (i == length) {
+            return value;
+        } else {
+            StringBuilder encoded = new StringBuilder(length + 16).append(value, 0, i);
+            while (i < length) {
+                char c = value.charAt(i);
+                if (isSafe(value, i, safe)) {
+                    encoded.append(c);
+                    i++;
+                } else if (c == ' ' && spaceAsPlus) {
+                    encoded.append('+');
+                    i++;
+                } else if (c < 0x80) {
+                    appendEscaped(encoded, (byte) c);
+                    i++;
+                } else {
+                    int end = i + 1;
+                    while (end < length && value.charAt(end) >= 0x80) {
+                        end++;
+                    }
+                    for (byte b : value.substring(i, end).getBytes(UTF_8)) {
+                        appendEscaped(encoded, b);
+                    }
+                    i = end;
+                }
+            }
+            return encoded.toString();
+        }
+    }
+
+    private static boolean isSafe(String value, int index, boolean[] safe) {
+        char c = value.charAt(index);
+        if (c == '%') {
+            // Preserve already encoded sequences:
+            return index + 2 < value.length() && isHex(value.charAt(index + 1)) && isHex(value.charAt(index + 2));
+        } else {
+            return c < 0x80 && safe[c];
+        }
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static void appendEscaped(StringBuilder encoded, byte b) {
+        encoded.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+    }
+
+    /**
+     * Appends encoded path segments and query parameters to a host prefix.
+     */
+    public class Builder {
+
+        private final StringBuilder uri;
+        private boolean hasQuery;
+
+        private Builder(String prefix) {
+            this.uri = new StringBuilder(prefix.length() + 64).append(prefix);
+        }
+
+        public Builder bucket(String bucket) {
+            uri.append('/').append(encodeBucket(bucket));
+            return this;
+        }
+
+        public Builder path(String segment) {
+            uri.append('/').append(encode(segment, PATH_SAFE, false));
+            return this;
+        }
+
+        public Builder query(String name, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Null value for query parameter: " + name);
+            }
+            uri.append(hasQuery ? '&' : '?').append(name).append('=').append(encode(value.toString(), QUERY_SAFE, true));
+            hasQuery = true;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return uri.toString();
+        }
+    }
+}
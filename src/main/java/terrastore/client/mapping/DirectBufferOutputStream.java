@@ -0,0 +1,81 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream writing bytes to a growing direct (off-heap) buffer.
+ *
+ * @author Sergio Bossa
+ */
+class DirectBufferOutputStream extends RawValuesOutputStream {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    //
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    @Override
+    public void discard() {
+        DirectBuffers.free(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Get the written bytes, as a direct buffer exactly holding them, and giving up its ownership.
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer result = buffer;
+        result.flip();
+        // Trim the buffer if wasting too much space:
+        if (result.capacity() - result.limit() > result.capacity() / 8) {
+            result = ByteBuffer.allocateDirect(buffer.limit());
+            result.put(buffer);
+            result.flip();
+            DirectBuffers.free(buffer);
+        }
+        buffer = null;
+        return result;
+    }
+
+    @Override
+    protected void append(int b) throws IOException {
+        ensure(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    protected void append(byte[] data, int offset, int length) throws IOException {
+        ensure(length);
+        buffer.put(data, offset, length);
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            long required = (long) buffer.position() + length;
+            if (required > MAX_CAPACITY) {
+                throw new IOException("Values too large for off-heap storage: " + required + " bytes.");
+            }
+            long capacity = Math.min(Math.max(buffer.capacity() * 2L, required), MAX_CAPACITY);
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+            buffer.flip();
+            grown.put(buffer);
+            DirectBuffers.free(buffer);
+            buffer = grown;
+        }
+    }
+}
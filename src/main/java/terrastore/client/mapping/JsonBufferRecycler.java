@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+
+/**
+ * Per-thread recycled byte buffers used for reading and writing raw Json documents.<br>
+ * Each buffer is sized after the (exponentially weighted) average size of the documents read by its thread:
+ * it grows as needed while reading larger documents, and shrinks back when it gets too large compared to the
+ * average, so that steady-state reads only allocate their result.<br>
+ * Buffers are softly referenced, so they can be reclaimed under memory pressure.
+ *
+ * @author Sergio Bossa
+ */
+class JsonBufferRecycler {
+
+    private static final int MIN_SIZE = 4096;
+    private static final int MAX_SIZE = 1024 * 1024;
+    private static final ThreadLocal<SoftReference<JsonBufferRecycler>> RECYCLERS = new ThreadLocal<SoftReference<JsonBufferRecycler>>();
+    //
+    private byte[] buffer = new byte[MIN_SIZE];
+    private int averageSize = MIN_SIZE;
+
+    public static JsonBufferRecycler get() {
+        SoftReference<JsonBufferRecycler> reference = RECYCLERS.get();
+        JsonBufferRecycler recycler = reference != null ? reference.get() : null;
+        if (recycler == null) {
+            recycler = new JsonBufferRecycler();
+            RECYCLERS.set(new SoftReference<JsonBufferRecycler>(recycler));
+        }
+        return recycler;
+    }
+
+    /**
+     * Fully read the given stream into the recycled buffer, returning a copy of exactly the read bytes.
+     */
+    public byte[] readFully(InputStream entityStream) throws IOException {
+        byte[] data = buffer;
+        int length = 0;
+        int read = 0;
+        while ((read = entityStream.read(data, length, data.length - length)) != -1) {
+            length += read;
+            if (length == data.length) {
+                byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(data, 0, result, 0, length);
+        recycle(data, length);
+        return result;
+    }
+
+    /**
+     * Get the recycled buffer, to be used as scratch space: its contents may be overwritten by later calls.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    private void recycle(byte[] data, int length) {
+        averageSize = averageSize - (averageSize >> 3) + (length >> 3);
+        int targetSize = MIN_SIZE;
+        while (targetSize < averageSize * 2 && targetSize < MAX_SIZE) {
+            targetSize <<= 1;
+        }
+        if (data.length <= targetSize * 2) {
+            buffer = data;
+        } else {
+            buffer = new byte[targetSize];
+        }
+    }
+}
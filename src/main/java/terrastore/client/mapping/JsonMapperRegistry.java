@@ -0,0 +1,78 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.util.Collections;
+import java.util.List;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.deser.CustomDeserializerFactory;
+import org.codehaus.jackson.map.deser.StdDeserializerProvider;
+import org.codehaus.jackson.map.ser.CustomSerializerFactory;
+import org.codehaus.jackson.map.type.TypeFactory;
+
+/**
+ * Registry holding the {@link ObjectMapper} shared by all Json readers and writers of a connection,
+ * so that serializers and deserializers for each type are built and cached only once.<br>
+ * Serializers and deserializers for descriptor classes, and for any other declared type, are eagerly built
+ * at construction time, in order to avoid paying their cost on first request.
+ *
+ * @author Sergio Bossa
+ */
+public class JsonMapperRegistry {
+
+    private final ObjectMapper jsonMapper;
+
+    public JsonMapperRegistry(List<? extends JsonObjectDescriptor> descriptors) {
+        this(descriptors, Collections.<Class<?>>emptyList());
+    }
+
+    public JsonMapperRegistry(List<? extends JsonObjectDescriptor> descriptors, List<Class<?>> types) {
+        CustomSerializerFactory serializerFactory = new CustomSerializerFactory();
+        CustomDeserializerFactory deserializerFactory = new CustomDeserializerFactory();
+        for (JsonObjectDescriptor descriptor : descriptors) {
+            serializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonSerializer());
+            deserializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonDeserializer());
+        }
+        this.jsonMapper = new ObjectMapper();
+        this.jsonMapper.setSerializerFactory(serializerFactory);
+        this.jsonMapper.setDeserializerProvider(new StdDeserializerProvider(deserializerFactory));
+        for (JsonObjectDescriptor descriptor : descriptors) {
+            warmUp(descriptor.getObjectClass());
+        }
+        for (Class<?> type : types) {
+            warmUp(type);
+        }
+    }
+
+    /**
+     * Eagerly build and cache serializer and deserializer for the given type.
+     *
+     * @param type The type to build serializer and deserializer for.
+     */
+    public void warmUp(Class<?> type) {
+        if (!RawJson.isRaw(type)) {
+            jsonMapper.canSerialize(type);
+            jsonMapper.canDeserialize(TypeFactory.type(type));
+        }
+    }
+
+    /**
+     * Get the shared, thread-safe, {@link ObjectMapper}.
+     */
+    public ObjectMapper getMapper() {
+        return jsonMapper;
+    }
+}
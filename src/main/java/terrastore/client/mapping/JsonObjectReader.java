@@ -20,16 +20,18 @@ import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Set;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.deser.CustomDeserializerFactory;
-import org.codehaus.jackson.map.deser.StdDeserializerProvider;
-import org.codehaus.jackson.map.ser.CustomSerializerFactory;
+
+import terrastore.client.CompactKeySet;
 
 
 /**
@@ -42,15 +44,11 @@ public class JsonObjectReader implements MessageBodyReader {
     private final ObjectMapper jsonMapper;
 
     public JsonObjectReader(List<? extends JsonObjectDescriptor> descriptors) {
-        CustomSerializerFactory serializerFactory = new CustomSerializerFactory();
-        CustomDeserializerFactory deserializerFactory = new CustomDeserializerFactory();
-        for (JsonObjectDescriptor descriptor : descriptors) {
-            serializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonSerializer());
-            deserializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonDeserializer());
-        }
-        this.jsonMapper = new ObjectMapper();
-        this.jsonMapper.setSerializerFactory(serializerFactory);
-        this.jsonMapper.setDeserializerProvider(new StdDeserializerProvider(deserializerFactory));
+        this(new JsonMapperRegistry(descriptors));
+    }
+
+    public JsonObjectReader(JsonMapperRegistry mapperRegistry) {
+        this.jsonMapper = mapperRegistry.getMapper();
     }
 
     public boolean isReadable(Class type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -58,6 +56,43 @@ public class JsonObjectReader implements MessageBodyReader {
     }
 
     public Object readFrom(Class type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
-       return jsonMapper.readValue(entityStream, type);
+        if (RawJson.isRaw(type)) {
+            return RawJson.read(type, entityStream);
+        } else if (type == CompactKeySet.class) {
+            return readKeys(entityStream);
+        } else {
+            return jsonMapper.readValue(entityStream, type);
+        }
+    }
+
+    /**
+     * Read a value from the given entity stream retaining only the given fields, while skipping all others.
+     *
+     * @param type The Java type to deserialize the value to.
+     * @param fields The names of the fields to retain.
+     * @param entityStream The stream to read the value from.
+     */
+    public <T> T readProjected(Class<T> type, Set<String> fields, InputStream entityStream) throws IOException {
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
+        try {
+            jsonParser.nextToken();
+            return JsonProjection.bind(jsonMapper, JsonProjection.read(jsonMapper, jsonParser, fields), type);
+        } finally {
+            jsonParser.close();
+        }
+    }
+
+    private CompactKeySet readKeys(InputStream entityStream) throws IOException {
+        CompactKeySet result = new CompactKeySet();
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
+        try {
+            jsonParser.nextToken();
+            while (jsonParser.nextToken() == JsonToken.VALUE_STRING) {
+                result.add(jsonParser.getText());
+            }
+            return result;
+        } finally {
+            jsonParser.close();
+        }
     }
 }
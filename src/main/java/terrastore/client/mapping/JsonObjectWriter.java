@@ -27,9 +27,6 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.deser.CustomDeserializerFactory;
-import org.codehaus.jackson.map.deser.StdDeserializerProvider;
-import org.codehaus.jackson.map.ser.CustomSerializerFactory;
 
 
 /**
@@ -42,15 +39,11 @@ public class JsonObjectWriter implements MessageBodyWriter {
     private final ObjectMapper jsonMapper;
 
     public JsonObjectWriter(List<? extends JsonObjectDescriptor> descriptors) {
-        CustomSerializerFactory serializerFactory = new CustomSerializerFactory();
-        CustomDeserializerFactory deserializerFactory = new CustomDeserializerFactory();
-        for (JsonObjectDescriptor descriptor : descriptors) {
-            serializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonSerializer());
-            deserializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonDeserializer());
-        }
-        this.jsonMapper = new ObjectMapper();
-        this.jsonMapper.setSerializerFactory(serializerFactory);
-        this.jsonMapper.setDeserializerProvider(new StdDeserializerProvider(deserializerFactory));
+        this(new JsonMapperRegistry(descriptors));
+    }
+
+    public JsonObjectWriter(JsonMapperRegistry mapperRegistry) {
+        this.jsonMapper = mapperRegistry.getMapper();
     }
 
     public boolean isWriteable(Class type, Type genericType, Annotation[] annotations, MediaType mediaType) {
@@ -58,7 +51,11 @@ public class JsonObjectWriter implements MessageBodyWriter {
     }
 
     public void writeTo(Object object, Class type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-        jsonMapper.writeValue(entityStream, object);
+        if (RawJson.isRaw(object.getClass())) {
+            RawJson.write(object, entityStream);
+        } else {
+            jsonMapper.writeValue(entityStream, object);
+        }
     }
 
     public long getSize(Object object, Class type, Type genericType, Annotation[] annotations, MediaType mediaType) {
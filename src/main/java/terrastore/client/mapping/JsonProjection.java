@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.util.Set;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Reads Json objects retaining only a given set of top-level fields: all other fields are skipped
+ * at the token level, without building any object for them.
+ *
+ * @author Sergio Bossa
+ */
+class JsonProjection {
+
+    /**
+     * Read the value starting at the current parser token, retaining only the given fields if it is an object.
+     */
+    public static JsonNode read(ObjectMapper jsonMapper, JsonParser jsonParser, Set<String> fields) throws IOException {
+        if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
+            ObjectNode result = jsonMapper.getNodeFactory().objectNode();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+                if (fields.contains(name)) {
+                    result.put(name, jsonMapper.readTree(jsonParser));
+                } else {
+                    jsonParser.skipChildren();
+                }
+            }
+            return result;
+        } else {
+            return jsonMapper.readTree(jsonParser);
+        }
+    }
+
+    /**
+     * Bind the given (projected) Json tree to the given type.
+     */
+    public static <T> T bind(ObjectMapper jsonMapper, JsonNode value, Class<T> type) throws IOException {
+        if (RawJson.isRaw(type)) {
+            byte[] data = jsonMapper.writeValueAsBytes(value);
+            return (T) RawJson.slice(type, data, 0, data.length);
+        } else {
+            return jsonMapper.treeToValue(value, type);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import terrastore.client.TerrastoreClientException;
+import terrastore.client.ValuesIterator;
+
+/**
+ * {@link ValuesIterator} implementation incrementally parsing key/value entries from a Json object stream,
+ * so that only one value at a time is held in memory.<br>
+ * The underlying stream resource is released as soon as the last entry is parsed, or aborted if the iterator
+ * is closed before, so that unread entries don't need to be transferred.
+ *
+ * @author Sergio Bossa
+ */
+public class JsonValuesIterator<T> implements ValuesIterator<T> {
+
+    private final JsonParser jsonParser;
+    private final Class<T> type;
+    private final Resource resource;
+    //
+    private Map.Entry<String, T> nextEntry;
+    private boolean closed;
+
+    public JsonValuesIterator(JsonParser jsonParser, Class<T> type, Resource resource) throws IOException {
+        this.jsonParser = jsonParser;
+        this.type = type;
+        this.resource = resource;
+        if (jsonParser.nextToken() != JsonToken.START_OBJECT) {
+            close(false);
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (nextEntry == null && !closed) {
+            try {
+                if (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = jsonParser.getCurrentName();
+                    jsonParser.nextToken();
+                    T value = jsonParser.readValueAs(type);
+                    nextEntry = new AbstractMap.SimpleImmutableEntry<String, T>(name, value);
+                } else {
+                    close(false);
+                }
+            } catch (IOException ex) {
+                close(true);
+                throw new TerrastoreClientException("Could not read values: " + ex, ex);
+            }
+        }
+        return nextEntry != null;
+    }
+
+    @Override
+    public synchronized Map.Entry<String, T> next() {
+        if (hasNext()) {
+            Map.Entry<String, T> result = nextEntry;
+            nextEntry = null;
+            return result;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove entries from a values stream.");
+    }
+
+    @Override
+    public synchronized void close() {
+        close(true);
+    }
+
+    private void close(boolean abort) {
+        if (!closed) {
+            closed = true;
+            try {
+                jsonParser.close();
+            } catch (IOException ex) {
+                // Ignore: the resource is going to be closed anyways.
+            } finally {
+                try {
+                    if (abort) {
+                        resource.abort();
+                    } else {
+                        resource.release();
+                    }
+                } catch (IOException ex) {
+                    throw new TerrastoreClientException("Could not close values stream: " + ex, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resource backing the stream values are read from.
+     */
+    public interface Resource {
+
+        /**
+         * Release the resource after all values have been read.
+         */
+        public void release() throws IOException;
+
+        /**
+         * Abort the resource before all values have been read, discarding unread ones.
+         */
+        public void abort() throws IOException;
+    }
+}
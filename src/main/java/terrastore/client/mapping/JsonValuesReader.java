@@ -15,27 +15,37 @@
  */
 package terrastore.client.mapping;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.LinkedHashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.deser.CustomDeserializerFactory;
-import org.codehaus.jackson.map.deser.StdDeserializerProvider;
-import org.codehaus.jackson.map.ser.CustomSerializerFactory;
 
+import terrastore.client.CompactKeyMap;
+import terrastore.client.CompactKeySet;
+import terrastore.client.LazyValues;
+import terrastore.client.OffHeapValues;
+import terrastore.client.SpilledValues;
 import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
 
 /**
  * @author Sergio Bossa
@@ -44,18 +54,16 @@ import terrastore.client.Values;
 @Consumes("application/json")
 public class JsonValuesReader implements MessageBodyReader<Values> {
 
+    private static final long SPILL_SEGMENT_SIZE = 1024 * 1024 * 1024;
+    //
     private final ObjectMapper jsonMapper;
 
     public JsonValuesReader(List<? extends JsonObjectDescriptor> descriptors) {
-        CustomSerializerFactory serializerFactory = new CustomSerializerFactory();
-        CustomDeserializerFactory deserializerFactory = new CustomDeserializerFactory();
-        for (JsonObjectDescriptor descriptor : descriptors) {
-            serializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonSerializer());
-            deserializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonDeserializer());
-        }
-        this.jsonMapper = new ObjectMapper();
-        this.jsonMapper.setSerializerFactory(serializerFactory);
-        this.jsonMapper.setDeserializerProvider(new StdDeserializerProvider(deserializerFactory));
+        this(new JsonMapperRegistry(descriptors));
+    }
+
+    public JsonValuesReader(JsonMapperRegistry mapperRegistry) {
+        this.jsonMapper = mapperRegistry.getMapper();
     }
 
     @Override
@@ -65,7 +73,13 @@ public class JsonValuesReader implements MessageBodyReader<Values> {
 
     @Override
     public Values readFrom(Class type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
-        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        if (LazyValues.class.isAssignableFrom(type)) {
+            return readLazily((Class) genericType, entityStream);
+        } else if (RawJson.isRaw((Class) genericType)) {
+            // Raw values are just sliced, so there's no point in deserializing them twice:
+            return new Values(new CompactKeyMap(readLazily((Class) genericType, entityStream)));
+        }
+        Map<String, Object> result = new CompactKeyMap<Object>();
         JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
         jsonParser.nextToken();
         while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
@@ -77,4 +91,261 @@ public class JsonValuesReader implements MessageBodyReader<Values> {
         return new Values(result);
     }
 
+    /**
+     * Read values from the given entity stream as {@link LazyValues}, holding raw Json bytes
+     * and deserializing them only when accessed.
+     *
+     * @param type The Java type to deserialize values to.
+     * @param entityStream The stream to read values from.
+     */
+    public <T> LazyValues<T> readLazily(Class<T> type, InputStream entityStream) throws IOException {
+        byte[] data = RawJson.readFully(entityStream);
+        CompactKeySet keys = new CompactKeySet();
+        int[] offsets = new int[16];
+        int[] lengths = new int[16];
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(data);
+        jsonParser.nextToken();
+        // Byte parsers report the offset of the last consumed byte as char offset:
+        int end = (int) jsonParser.getCurrentLocation().getCharOffset() + 1;
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            JsonToken value = jsonParser.nextToken();
+            int start = valueStart(data, end);
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                jsonParser.skipChildren();
+            } else {
+                jsonParser.getText();
+            }
+            end = (int) jsonParser.getCurrentLocation().getCharOffset() + 1;
+            int ordinal = keys.put(name);
+            if (ordinal == offsets.length) {
+                offsets = copyOf(offsets, ordinal * 2);
+                lengths = copyOf(lengths, ordinal * 2);
+            }
+            offsets[ordinal] = start;
+            lengths[ordinal] = end - start;
+        }
+        jsonParser.close();
+        return new LazyValues<T>(ByteBuffer.wrap(data), keys, offsets, lengths, new JsonBinder<T>(type));
+    }
+
+    /**
+     * Read values from the given entity stream holding their raw Json bytes on the heap up to the given
+     * threshold, and spilling them to a temporary memory-mapped file if going over it.<br>
+     * Values are deserialized only when accessed, as either {@link LazyValues}, if under the threshold,
+     * or {@link SpilledValues}, if over it.
+     *
+     * @param type The Java type to deserialize values to.
+     * @param threshold The max size in bytes of raw values to hold on the heap.
+     * @param entityStream The stream to read values from.
+     */
+    public <T> Values<T> readSpilling(Class<T> type, long threshold, InputStream entityStream) throws IOException {
+        SpillingOutputStream output = new SpillingOutputStream(threshold);
+        RawValuesIndex index = copyValues(entityStream, output, SPILL_SEGMENT_SIZE);
+        if (output.isSpilled()) {
+            return mapSpilled(type, output, index);
+        } else {
+            return new LazyValues<T>(ByteBuffer.wrap(output.getBuffer(), 0, (int) output.size()), index.keys, index.getIntOffsets(), index.lengths, new JsonBinder<T>(type));
+        }
+    }
+
+    /**
+     * Read values from the given entity stream as {@link OffHeapValues}, holding their raw Json bytes
+     * in direct (off-heap) memory, and deserializing them only when accessed.
+     *
+     * @param type The Java type to deserialize values to.
+     * @param entityStream The stream to read values from.
+     */
+    public <T> OffHeapValues<T> readOffHeap(Class<T> type, InputStream entityStream) throws IOException {
+        DirectBufferOutputStream output = new DirectBufferOutputStream();
+        RawValuesIndex index = copyValues(entityStream, output, Long.MAX_VALUE);
+        return new OffHeapValues<T>(output.getBuffer(), index.keys, index.getIntOffsets(), index.lengths, new JsonBinder<T>(type));
+    }
+
+    /**
+     * Read values from the given entity stream retaining only the given fields of each value,
+     * while skipping all others.
+     *
+     * @param type The Java type to deserialize values to.
+     * @param fields The names of the fields to retain.
+     * @param entityStream The stream to read values from.
+     */
+    public <T> Values<T> readProjected(Class<T> type, Set<String> fields, InputStream entityStream) throws IOException {
+        Map<String, T> result = new CompactKeyMap<T>();
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
+        try {
+            jsonParser.nextToken();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+                result.put(name, JsonProjection.bind(jsonMapper, JsonProjection.read(jsonMapper, jsonParser, fields), type));
+            }
+            return new Values<T>(result);
+        } finally {
+            jsonParser.close();
+        }
+    }
+
+    /**
+     * Read values from the given entity stream as they're consumed by the returned {@link ValuesIterator},
+     * rather than fully materializing them.
+     *
+     * @param type The Java type to deserialize values to.
+     * @param entityStream The stream to read values from.
+     * @param resource The resource to release once the iterator is fully consumed, or abort if closed before.
+     */
+    public <T> ValuesIterator<T> readStream(Class<T> type, InputStream entityStream, JsonValuesIterator.Resource resource) throws IOException {
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
+        return new JsonValuesIterator<T>(jsonParser, type, resource);
+    }
+
+    private int valueStart(byte[] data, int from) {
+        // Skip the field name, ignoring escaped quotes, up to the name/value separator:
+        int position = from;
+        while (data[position] != '"') {
+            position++;
+        }
+        position++;
+        while (data[position] != '"') {
+            position += data[position] == '\\' ? 2 : 1;
+        }
+        while (data[position] != ':') {
+            position++;
+        }
+        position++;
+        while (data[position] == ' ' || data[position] == '\t' || data[position] == '\r' || data[position] == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private RawValuesIndex copyValues(InputStream entityStream, RawValuesOutputStream output, long segmentSize) throws IOException {
+        RawValuesIndex index = new RawValuesIndex();
+        JsonParser jsonParser = jsonMapper.getJsonFactory().createJsonParser(entityStream);
+        JsonGenerator jsonGenerator = jsonMapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+        try {
+            jsonParser.nextToken();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+                long start = output.size();
+                output.mark();
+                jsonGenerator.copyCurrentStructure(jsonParser);
+                jsonGenerator.flush();
+                // Skip the separator written between root-level values:
+                if (output.getMarkedByte() == ' ') {
+                    start++;
+                }
+                index.add(name, start, output.size(), segmentSize);
+            }
+            jsonGenerator.close();
+            jsonParser.close();
+            return index;
+        } catch (IOException ex) {
+            output.discard();
+            throw ex;
+        } catch (RuntimeException ex) {
+            output.discard();
+            throw ex;
+        }
+    }
+
+    private <T> SpilledValues<T> mapSpilled(Class<T> type, SpillingOutputStream output, RawValuesIndex index) throws IOException {
+        List<Long> segmentOffsets = index.segmentOffsets;
+        File file = output.getFile();
+        RandomAccessFile spilled = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = spilled.getChannel();
+            ByteBuffer[] segments = new ByteBuffer[segmentOffsets.size()];
+            long[] segmentStarts = new long[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                long segmentStart = segmentOffsets.get(i);
+                long segmentEnd = i + 1 < segments.length ? segmentOffsets.get(i + 1) : output.size();
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart);
+                segmentStarts[i] = segmentStart;
+            }
+            return new SpilledValues<T>(segments, segmentStarts, index.keys, index.offsets, index.lengths, new JsonBinder<T>(type), output.size());
+        } finally {
+            spilled.close();
+            // Mappings stay valid after the file is deleted, at least on Unix systems:
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private int[] copyOf(int[] source, int length) {
+        int[] result = new int[length];
+        System.arraycopy(source, 0, result, 0, Math.min(source.length, length));
+        return result;
+    }
+
+    private static class RawValuesIndex {
+
+        private final CompactKeySet keys = new CompactKeySet();
+        private final List<Long> segmentOffsets = new ArrayList<Long>();
+        private long[] offsets = new long[16];
+        private int[] lengths = new int[16];
+
+        public RawValuesIndex() {
+            segmentOffsets.add(0L);
+        }
+
+        public void add(String key, long start, long end, long segmentSize) {
+            // Start a new segment once the current one is full, so that each value lies in a single segment:
+            long segmentStart = segmentOffsets.get(segmentOffsets.size() - 1);
+            if (end - segmentStart > segmentSize && start > segmentStart) {
+                segmentOffsets.add(start);
+            }
+            int ordinal = keys.put(key);
+            if (ordinal == offsets.length) {
+                long[] newOffsets = new long[ordinal * 2];
+                int[] newLengths = new int[ordinal * 2];
+                System.arraycopy(offsets, 0, newOffsets, 0, ordinal);
+                System.arraycopy(lengths, 0, newLengths, 0, ordinal);
+                offsets = newOffsets;
+                lengths = newLengths;
+            }
+            offsets[ordinal] = start;
+            lengths[ordinal] = (int) (end - start);
+        }
+
+        public int[] getIntOffsets() {
+            int[] result = new int[keys.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = (int) offsets[i];
+            }
+            return result;
+        }
+    }
+
+    private class JsonBinder<T> implements LazyValues.Binder<T> {
+
+        private final Class<T> type;
+
+        public JsonBinder(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override
+        public T bind(ByteBuffer data, int offset, int length) throws IOException {
+            byte[] value = null;
+            if (data.hasArray()) {
+                value = data.array();
+                offset += data.arrayOffset();
+            } else {
+                value = new byte[length];
+                ByteBuffer slice = data.duplicate();
+                slice.position(offset);
+                slice.get(value);
+                offset = 0;
+            }
+            if (RawJson.isRaw(type)) {
+                return (T) RawJson.slice(type, value, offset, length);
+            } else {
+                return jsonMapper.readValue(value, offset, length, type);
+            }
+        }
+    }
+
 }
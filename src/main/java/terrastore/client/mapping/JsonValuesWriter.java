@@ -27,9 +27,6 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.deser.CustomDeserializerFactory;
-import org.codehaus.jackson.map.deser.StdDeserializerProvider;
-import org.codehaus.jackson.map.ser.CustomSerializerFactory;
 
 import terrastore.client.Values;
 
@@ -43,15 +40,11 @@ public class JsonValuesWriter implements MessageBodyWriter<Values> {
     private final ObjectMapper jsonMapper;
 
     public JsonValuesWriter(List<? extends JsonObjectDescriptor> descriptors) {
-        CustomSerializerFactory serializerFactory = new CustomSerializerFactory();
-        CustomDeserializerFactory deserializerFactory = new CustomDeserializerFactory();
-        for (JsonObjectDescriptor descriptor : descriptors) {
-            serializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonSerializer());
-            deserializerFactory.addSpecificMapping(descriptor.getObjectClass(), descriptor.getJsonDeserializer());
-        }
-        this.jsonMapper = new ObjectMapper();
-        this.jsonMapper.setSerializerFactory(serializerFactory);
-        this.jsonMapper.setDeserializerProvider(new StdDeserializerProvider(deserializerFactory));
+        this(new JsonMapperRegistry(descriptors));
+    }
+
+    public JsonValuesWriter(JsonMapperRegistry mapperRegistry) {
+        this.jsonMapper = mapperRegistry.getMapper();
     }
 
     @Override
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Pass-through support for values exchanged as raw Json bytes, either as byte arrays or {@link ByteBuffer}s,
+ * which are read and written untouched rather than bound to Java objects.
+ *
+ * @author Sergio Bossa
+ */
+class RawJson {
+
+    public static boolean isRaw(Class<?> type) {
+        return type == byte[].class || ByteBuffer.class.isAssignableFrom(type);
+    }
+
+    public static Object read(Class<?> type, InputStream entityStream) throws IOException {
+        byte[] data = readFully(entityStream);
+        return slice(type, data, 0, data.length);
+    }
+
+    public static Object slice(Class<?> type, byte[] data, int offset, int length) {
+        if (type == byte[].class) {
+            if (offset == 0 && length == data.length) {
+                return data;
+            } else {
+                byte[] value = new byte[length];
+                System.arraycopy(data, offset, value, 0, length);
+                return value;
+            }
+        } else {
+            return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+        }
+    }
+
+    public static void write(Object value, OutputStream entityStream) throws IOException {
+        if (value instanceof byte[]) {
+            entityStream.write((byte[]) value);
+        } else {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            if (buffer.hasArray()) {
+                entityStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                byte[] chunk = JsonBufferRecycler.get().getBuffer();
+                while (buffer.hasRemaining()) {
+                    int length = Math.min(buffer.remaining(), chunk.length);
+                    buffer.get(chunk, 0, length);
+                    entityStream.write(chunk, 0, length);
+                }
+            }
+        }
+    }
+
+    public static byte[] readFully(InputStream entityStream) throws IOException {
+        return JsonBufferRecycler.get().readFully(entityStream);
+    }
+}
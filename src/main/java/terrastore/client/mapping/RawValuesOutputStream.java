@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream collecting raw Json values, keeping track of the exact number of written bytes.<br>
+ * Flushing is a no-op, so that callers can cheaply flush in order to get the exact stream size,
+ * while actual flushing, if any, only happens on close.
+ *
+ * @author Sergio Bossa
+ */
+abstract class RawValuesOutputStream extends OutputStream {
+
+    private long size;
+    private boolean marked;
+    private int markedByte;
+
+    @Override
+    public final void write(int b) throws IOException {
+        onMark(b);
+        append(b);
+        size++;
+    }
+
+    @Override
+    public final void write(byte[] data, int offset, int length) throws IOException {
+        if (length > 0) {
+            onMark(data[offset]);
+            append(data, offset, length);
+            size += length;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+
+    /**
+     * Mark the current position, in order to later get the first byte written after it.
+     */
+    public void mark() {
+        marked = true;
+        markedByte = -1;
+    }
+
+    /**
+     * Get the first byte written after the last mark, or -1 if none.
+     */
+    public int getMarkedByte() {
+        return markedByte;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Close this stream and release all resources held by it, discarding written bytes.
+     */
+    public abstract void discard();
+
+    protected abstract void append(int b) throws IOException;
+
+    protected abstract void append(byte[] data, int offset, int length) throws IOException;
+
+    private void onMark(int b) {
+        if (marked) {
+            marked = false;
+            markedByte = b & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream holding written bytes on the heap up to a given threshold, and spilling them
+ * to a temporary file when going over it.
+ *
+ * @author Sergio Bossa
+ */
+class SpillingOutputStream extends RawValuesOutputStream {
+
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    //
+    private final long threshold;
+    private byte[] buffer;
+    private File file;
+    private OutputStream fileStream;
+
+    public SpillingOutputStream(long threshold) {
+        this.threshold = Math.min(threshold, Integer.MAX_VALUE - 8);
+        this.buffer = new byte[(int) Math.min(this.threshold, 4096)];
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileStream != null) {
+            fileStream.close();
+        }
+    }
+
+    @Override
+    public void discard() {
+        try {
+            close();
+        } catch (IOException ex) {
+            // Ignore: going to be deleted anyways.
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected void append(int b) throws IOException {
+        ensure(1);
+        if (fileStream != null) {
+            fileStream.write(b);
+        } else {
+            buffer[(int) size()] = (byte) b;
+        }
+    }
+
+    @Override
+    protected void append(byte[] data, int offset, int length) throws IOException {
+        ensure(length);
+        if (fileStream != null) {
+            fileStream.write(data, offset, length);
+        } else {
+            System.arraycopy(data, offset, buffer, (int) size(), length);
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        long size = size();
+        if (fileStream == null) {
+            if (size + length > threshold) {
+                file = File.createTempFile("terrastore-values-", ".json");
+                fileStream = new BufferedOutputStream(new FileOutputStream(file), FILE_BUFFER_SIZE);
+                fileStream.write(buffer, 0, (int) size);
+                buffer = null;
+            } else if (size + length > buffer.length) {
+                byte[] grown = new byte[(int) Math.min(Math.max(buffer.length * 2L, size + length), threshold)];
+                System.arraycopy(buffer, 0, grown, 0, (int) size);
+                buffer = grown;
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package terrastore.client.mapreduce;
 
+import java.util.Arrays;
 import java.util.Map;
 import org.codehaus.jackson.annotate.JsonProperty;
 
@@ -45,6 +46,18 @@ public class MapReduceQuery {
         return newInstance;
     }
 
+    public Range getRange() {
+        return range;
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
     public static class Range {
 
         @JsonProperty
@@ -90,6 +103,22 @@ public class MapReduceQuery {
             return newInstance;
         }
 
+        public String getStartKey() {
+            return startKey;
+        }
+
+        public String getEndKey() {
+            return endKey;
+        }
+
+        public String getComparator() {
+            return comparator;
+        }
+
+        public Long getTimeToLive() {
+            return timeToLive;
+        }
+
     }
 
     public static class Task {
@@ -146,5 +175,21 @@ public class MapReduceQuery {
             return newInstance;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Task) {
+                Task other = (Task) obj;
+                return equal(mapper, other.mapper) && equal(combiner, other.combiner) && equal(reducer, other.reducer)
+                        && timeout == other.timeout && equal(parameters, other.parameters);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{mapper, combiner, reducer, timeout, parameters});
+        }
+
     }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CompactKeyMapTest {
+
+    @Test
+    public void testBehavesAsLinkedHashMap() {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        CompactKeyMap<Integer> values = new CompactKeyMap<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            expected.put("key" + i, i);
+            assertNull(values.put("key" + i, i));
+        }
+        assertEquals(Integer.valueOf(1), values.put("key1", -1));
+        expected.put("key1", -1);
+        assertEquals(expected, values);
+        assertEquals(expected.hashCode(), values.hashCode());
+        assertEquals(expected.keySet().iterator().next(), values.keySet().iterator().next());
+        assertEquals(Integer.valueOf(-1), values.get("key1"));
+        assertNull(values.get("key1000"));
+        assertTrue(values.containsKey("key999"));
+    }
+
+    @Test
+    public void testRemoveValues() {
+        CompactKeyMap<Integer> values = new CompactKeyMap<Integer>();
+        for (int i = 0; i < 10; i++) {
+            values.put("key" + i, i);
+        }
+        assertEquals(Integer.valueOf(1), values.remove("key1"));
+        assertNull(values.remove("key1"));
+        assertTrue(values.keySet().remove("key2"));
+        Iterator<Map.Entry<String, Integer>> entries = values.entrySet().iterator();
+        Map.Entry<String, Integer> first = entries.next();
+        assertEquals("key0", first.getKey());
+        entries.remove();
+        Map.Entry<String, Integer> second = entries.next();
+        assertEquals("key3", second.getKey());
+        second.setValue(-3);
+
+        assertEquals(7, values.size());
+        assertFalse(values.containsKey("key0"));
+        assertNull(values.get("key2"));
+        assertEquals(Integer.valueOf(-3), values.get("key3"));
+        assertNull(values.put("key1", 1));
+        assertEquals(Integer.valueOf(1), values.get("key1"));
+        values.entrySet().clear();
+        assertTrue(values.isEmpty());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CompactKeySetTest {
+
+    @Test
+    public void testAddAndContains() {
+        CompactKeySet keys = new CompactKeySet();
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            assertTrue(keys.add(key));
+            expected.add(key);
+        }
+        assertFalse(keys.add("key1"));
+        assertEquals(1000, keys.size());
+        assertEquals(expected, keys);
+        assertEquals(expected.hashCode(), keys.hashCode());
+        assertEquals(1, keys.ordinalOf("key1"));
+        assertEquals(-1, keys.ordinalOf("key1000"));
+        assertFalse(keys.contains(1));
+    }
+
+    @Test
+    public void testKeysAreInInsertionOrder() {
+        CompactKeySet keys = new CompactKeySet();
+        keys.add("c");
+        keys.add("a");
+        keys.add("b");
+        Iterator<String> iterator = keys.iterator();
+        assertEquals("c", iterator.next());
+        assertEquals("a", iterator.next());
+        assertEquals("b", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testRemoveKeys() {
+        CompactKeySet keys = new CompactKeySet();
+        for (int i = 0; i < 100; i++) {
+            keys.add("key" + i);
+        }
+        assertTrue(keys.remove("key1"));
+        assertFalse(keys.remove("key1"));
+        Iterator<String> iterator = keys.iterator();
+        assertEquals("key0", iterator.next());
+        iterator.remove();
+        assertEquals("key2", iterator.next());
+        assertEquals(98, keys.size());
+        assertFalse(keys.contains("key0"));
+        assertFalse(keys.contains("key1"));
+        assertEquals(-1, keys.ordinalOf("key1"));
+        // Removed keys can be added back, keeping their position:
+        assertTrue(keys.add("key1"));
+        assertEquals(99, keys.size());
+        assertEquals("key1", keys.iterator().next());
+        // Adding more keys grows the removed keys index too:
+        for (int i = 100; i < 1000; i++) {
+            keys.add("key" + i);
+        }
+        assertFalse(keys.contains("key0"));
+        assertEquals(999, keys.size());
+        keys.clear();
+        assertTrue(keys.isEmpty());
+        assertFalse(keys.contains("key1"));
+        assertTrue(keys.add("key1"));
+        assertEquals(0, keys.ordinalOf("key1"));
+    }
+
+    @Test
+    public void testNonAsciiKeys() {
+        CompactKeySet keys = new CompactKeySet();
+        String[] values = {"caf\u00e9", "\u6771\u4eac", "\ud83d\ude00smile", "", "a\u00e9"};
+        for (String value : values) {
+            keys.add(value);
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(i, keys.ordinalOf(values[i]));
+            assertEquals(values[i], keys.keyAt(i));
+        }
+        assertFalse(keys.contains("cafe"));
+        assertFalse(keys.contains("\u6771"));
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import org.junit.Test;
+import terrastore.client.connection.Connection;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class ParallelRangeScanTest {
+
+    @Test
+    public void testSamplesSplitKeysWithinRange() {
+        StubConnection stub = new StubConnection(1000, null);
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").from("key100").to("key199");
+
+        assertEquals(Arrays.asList("key125", "key150", "key175"), range.sampleSplitKeys(4));
+        assertEquals(Collections.singleton(Collections.<String>emptySet()), stub.projections);
+    }
+
+    @Test
+    public void testSamplesSplitKeysAtStride() {
+        StubConnection stub = new StubConnection(1000, null);
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").lazy();
+
+        assertEquals(Arrays.asList("key248", "key496", "key744"), range.sampleSplitKeys(4));
+        assertEquals(Collections.singleton(Collections.<String>emptySet()), stub.projections);
+    }
+
+    @Test
+    public void testSamplesNoSplitKeysForEmptyRange() {
+        StubConnection stub = new StubConnection(10, null);
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").from("key100").to("key199");
+
+        assertTrue(range.sampleSplitKeys(4).isEmpty());
+    }
+
+    @Test
+    public void testScansSubRangesInOrder() {
+        StubConnection stub = new StubConnection(100, null);
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").from("key010").to("key029").limit(3);
+
+        ValuesIterator<String> iterator = range.parallelIterator(String.class, Arrays.asList("key015", "key020", "key025"), true);
+        List<String> keys = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            assertEquals("value" + entry.getKey(), entry.getValue());
+            keys.add(entry.getKey());
+        }
+        iterator.close();
+
+        assertEquals(StubConnection.keys(10, 30), keys);
+    }
+
+    @Test
+    public void testScansSubRangesUnordered() {
+        StubConnection stub = new StubConnection(100, null);
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").from("key010").to("key029").limit(3);
+
+        ValuesIterator<String> iterator = range.parallelIterator(String.class, Arrays.asList("key015", "key020", "key025"), false);
+        List<String> keys = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        iterator.close();
+
+        assertEquals(20, keys.size());
+        assertEquals(new HashSet<String>(StubConnection.keys(10, 30)), new HashSet<String>(keys));
+    }
+
+    @Test
+    public void testFailsOnSubRangeFailure() {
+        StubConnection stub = new StubConnection(100, "key020");
+        RangeOperation range = new RangeOperation(stub.connection(), "bucket").from("key010").to("key029").limit(3);
+
+        ValuesIterator<String> iterator = range.parallelIterator(String.class, Arrays.asList("key015", "key020", "key025"), true);
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+            fail("Should have thrown TerrastoreClientException!");
+        } catch (TerrastoreClientException ex) {
+            assertEquals("Failed range query from key020", ex.getMessage());
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private static class StubConnection implements InvocationHandler {
+
+        private final TreeMap<String, String> data = new TreeMap<String, String>();
+        private final String failingKey;
+        private final Set<Set<String>> projections = Collections.synchronizedSet(new HashSet<Set<String>>());
+
+        public StubConnection(int size, String failingKey) {
+            for (String key : keys(0, size)) {
+                data.put(key, "value" + key);
+            }
+            this.failingKey = failingKey;
+        }
+
+        public static List<String> keys(int from, int to) {
+            List<String> keys = new ArrayList<String>(to - from);
+            for (int i = from; i < to; i++) {
+                keys.add(String.format("key%03d", i));
+            }
+            return keys;
+        }
+
+        public Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("queryByRange")) {
+                return queryByRange((RangeOperation.Context) args[0], (Class<?>) args[1]);
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        private <T> Values<T> queryByRange(RangeOperation.Context context, Class<T> type) {
+            if (context.getStartKey() != null && context.getStartKey().equals(failingKey)) {
+                throw new TerrastoreClientException("Failed range query from " + failingKey);
+            }
+            if (context.getFields() != null) {
+                projections.add(context.getFields());
+            }
+            NavigableMap<String, String> range = data;
+            if (context.getStartKey() != null) {
+                range = data.tailMap(context.getStartKey(), true);
+            }
+            if (context.getEndKey() != null) {
+                range = range.headMap(context.getEndKey(), true);
+            }
+            Map<String, T> result = new LinkedHashMap<String, T>();
+            for (Map.Entry<String, String> entry : range.entrySet()) {
+                if (context.getLimit() > 0 && result.size() == context.getLimit()) {
+                    break;
+                }
+                result.put(entry.getKey(), type.cast(entry.getValue()));
+            }
+            return new Values<T>(result);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import terrastore.client.KeyOperation;
+import terrastore.client.RangeOperation;
+import terrastore.client.TerrastoreClient;
+import terrastore.client.Values;
+import terrastore.client.connection.Connection;
+import terrastore.client.connection.ConnectionFactory;
+import terrastore.client.connection.ErrorMessage;
+import terrastore.client.connection.HostManager;
+import terrastore.client.connection.NoSuchKeyException;
+import terrastore.client.mapping.JsonObjectDescriptor;
+import terrastore.client.mapreduce.MapReduceOperation;
+import terrastore.client.mapreduce.MapReduceQuery;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class CachingConnectionTest {
+
+    private Connection connection;
+    private CachingConnectionFactory cachingFactory;
+    private TerrastoreClient client;
+
+    @Before
+    public void setUp() {
+        connection = createMock(Connection.class);
+        ConnectionFactory factory = new ConnectionFactory() {
+
+            @Override
+            public Connection makeConnection(HostManager hostManager, List<JsonObjectDescriptor<?>> descriptors) {
+                return connection;
+            }
+        };
+        NearCache cache = new NearCache(100, 1, TimeUnit.MINUTES, NearCache.EvictionPolicy.LRU);
+        NegativeCache negativeCache = new ExpiringNegativeCache(100, 1, TimeUnit.MINUTES);
+        ResultCache resultCache = new ResultCache(100, 0, TimeUnit.MINUTES);
+        cachingFactory = new CachingConnectionFactory(factory).keyCache(cache).negativeCache(negativeCache).resultCache(resultCache).buckets("cached");
+        client = new TerrastoreClient("http://localhost:8080", cachingFactory);
+    }
+
+    @Test
+    public void testCachesValuesUntilLocallyWritten() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value1").once();
+        connection.putValue(isA(KeyOperation.Context.class), eq("value2"));
+        expectLastCall().once();
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value2").once();
+        replay(connection);
+
+        assertEquals("value1", client.bucket("cached").key("key").get(String.class));
+        assertEquals("value1", client.bucket("cached").key("key").get(String.class));
+        client.bucket("cached").key("key").put("value2");
+        assertEquals("value2", client.bucket("cached").key("key").get(String.class));
+        assertEquals("value2", client.bucket("cached").key("key").get(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testSkipsCachingValuesThatCannotBeWeighed() {
+        Weigher weigher = new Weigher() {
+
+            @Override
+            public long weigh(Object value) {
+                if (value.equals("unweighable")) {
+                    throw new IllegalArgumentException("Cannot weigh value.");
+                }
+                return 1;
+            }
+        };
+        TerrastoreClient weighingClient = new TerrastoreClient("http://localhost:8080",
+                new CachingConnectionFactory(cachingFactory).keyCache(new TinyLfuCache(1000, 1, TimeUnit.MINUTES, weigher)));
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        connection.putValue(isA(KeyOperation.Context.class), eq("unweighable"));
+        expectLastCall().once();
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("unweighable").times(2);
+        replay(connection);
+
+        assertEquals("value", weighingClient.bucket("cached").key("key").get(String.class));
+        weighingClient.bucket("cached").key("key").put("unweighable");
+        assertEquals("unweighable", weighingClient.bucket("cached").key("key").get(String.class));
+        assertEquals("unweighable", weighingClient.bucket("cached").key("key").get(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testRecordsKeyStats() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        connection.removeValue(isA(KeyOperation.Context.class));
+        expectLastCall().once();
+        replay(connection);
+
+        client.bucket("cached").key("key").get(String.class);
+        client.bucket("cached").key("key").get(String.class);
+        client.bucket("cached").key("key").get(String.class);
+        client.bucket("cached").key("key").remove();
+
+        CacheStats stats = cachingFactory.getKeyStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getEvictionCount(CacheStats.EvictionCause.INVALIDATED));
+        assertEquals(0, stats.getEvictionCount(CacheStats.EvictionCause.SIZE));
+        assertNull(new CachingConnectionFactory(cachingFactory).keyCache(null).getKeyStats());
+
+        verify(connection);
+    }
+
+    @Test
+    public void testCachesMissingKeysUntilLocallyWritten() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andThrow(new NoSuchKeyException(new ErrorMessage("Not found", 404))).once();
+        connection.putValue(isA(KeyOperation.Context.class), eq("value"));
+        expectLastCall().once();
+        expect(connection.getValueIfPresent(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        replay(connection);
+
+        try {
+            client.bucket("cached").key("key").get(String.class);
+            fail("Should throw NoSuchKeyException!");
+        } catch (NoSuchKeyException ex) {
+        }
+        assertNull(client.bucket("cached").key("key").getIfPresent(String.class));
+        assertFalse(client.bucket("cached").key("key").exists());
+        client.bucket("cached").key("key").put("value");
+        assertEquals("value", client.bucket("cached").key("key").getIfPresent(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testCachesRangeResultsWithTimeToLive() {
+        Values<String> values = new Values<String>(Collections.singletonMap("key", "value"));
+        expect(connection.queryByRange(isA(RangeOperation.Context.class), eq(String.class))).andReturn(values).times(3);
+        replay(connection);
+
+        Values<String> cached = client.bucket("cached").range().from("a").to("z").timeToLive(60000).get(String.class);
+        assertEquals(values, cached);
+        assertSame(cached, client.bucket("cached").range().from("a").to("z").timeToLive(60000).get(String.class));
+        try {
+            cached.entrySet().clear();
+            fail("Cached results must not be modifiable.");
+        } catch (UnsupportedOperationException ex) {
+        }
+        client.bucket("cached").range().from("a").to("y").timeToLive(60000).get(String.class);
+        client.bucket("cached").range().from("a").to("z").get(String.class);
+
+        verify(connection);
+    }
+
+    @Test
+    public void testCachesMapReduceResultsAsUnmodifiable() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("sizes", new ArrayList<Object>(Arrays.asList(1, 2)));
+        expect(connection.queryByMapReduce(isA(MapReduceOperation.Context.class), eq(Map.class))).andReturn(result).once();
+        expect(connection.queryByMapReduce(isA(MapReduceOperation.Context.class), eq(HashMap.class))).andReturn(new HashMap<String, Object>(result)).times(2);
+        replay(connection);
+
+        MapReduceQuery.Task task = new MapReduceQuery.Task().mapper("size").reducer("size");
+        MapReduceQuery query = new MapReduceQuery().range(new MapReduceQuery.Range().from("a").to("z").timeToLive(60000)).task(task);
+        Map<?, ?> cached = client.bucket("cached").mapReduce(query).execute(Map.class);
+        assertEquals(result, cached);
+        // Same key regardless of the time to live, as with ranges:
+        query = new MapReduceQuery().range(new MapReduceQuery.Range().from("a").to("z").timeToLive(30000)).task(task);
+        assertSame(cached, client.bucket("cached").mapReduce(query).execute(Map.class));
+        try {
+            cached.clear();
+            fail("Cached results must not be modifiable.");
+        } catch (UnsupportedOperationException ex) {
+        }
+        try {
+            ((List<?>) cached.get("sizes")).clear();
+            fail("Cached nested results must not be modifiable.");
+        } catch (UnsupportedOperationException ex) {
+        }
+        // Concrete mutable types are never cached:
+        client.bucket("cached").mapReduce(query).execute(HashMap.class);
+        client.bucket("cached").mapReduce(query).execute(HashMap.class);
+
+        verify(connection);
+    }
+
+    @Test
+    public void testDoesNotCacheValuesLoadedWhileLocallyWritten() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andAnswer(new IAnswer<String>() {
+
+            @Override
+            public String answer() {
+                client.bucket("cached").key("key").remove();
+                return "stale";
+            }
+        }).once();
+        connection.removeValue(isA(KeyOperation.Context.class));
+        expectLastCall().once();
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        replay(connection);
+
+        assertEquals("stale", client.bucket("cached").key("key").get(String.class));
+        assertEquals("value", client.bucket("cached").key("key").get(String.class));
+        assertEquals("value", client.bucket("cached").key("key").get(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testDoesNotCacheKeysMissingWhileLocallyWritten() {
+        expect(connection.getValueIfPresent(isA(KeyOperation.Context.class), eq(String.class))).andAnswer(new IAnswer<String>() {
+
+            @Override
+            public String answer() {
+                client.bucket("cached").key("key").put("value");
+                return null;
+            }
+        }).once();
+        connection.putValue(isA(KeyOperation.Context.class), eq("value"));
+        expectLastCall().once();
+        expect(connection.getValueIfPresent(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        replay(connection);
+
+        assertNull(client.bucket("cached").key("key").getIfPresent(String.class));
+        assertEquals("value", client.bucket("cached").key("key").getIfPresent(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testDoesNotServeValuesCachedForOtherTypes() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").once();
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(Object.class))).andReturn(Collections.singletonMap("name", "value")).times(2);
+        replay(connection);
+
+        assertEquals("value", client.bucket("cached").key("key").get(String.class));
+        assertTrue(client.bucket("cached").key("key").get(Object.class) instanceof Map);
+        assertTrue(client.bucket("cached").key("key").get(Object.class) instanceof Map);
+        assertEquals("value", client.bucket("cached").key("key").get(String.class));
+
+        verify(connection);
+    }
+
+    @Test
+    public void testDoesNotCacheOtherBuckets() {
+        expect(connection.getValue(isA(KeyOperation.Context.class), eq(String.class))).andReturn("value").times(2);
+        replay(connection);
+
+        assertEquals("value", client.bucket("uncached").key("key").get(String.class));
+        assertEquals("value", client.bucket("uncached").key("key").get(String.class));
+
+        verify(connection);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class DiskCacheTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("terrastore-disk-cache", ".db");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRestoresValuesAfterReopening() throws Exception {
+        Map<String, Object> value = new HashMap<String, Object>();
+        value.put("name", "value");
+        DiskCache cache = new DiskCache(file, 4096);
+        cache.put("bucket", "key1", value);
+        cache.put("bucket", "key2", "value2");
+        cache.put("bucket", "key2", "value3");
+        cache.put("other", "key3", "value3");
+        cache.invalidate("other");
+        assertTrue(cache.getAge("bucket", "key1") < Long.MAX_VALUE);
+        cache.close();
+
+        cache = new DiskCache(file, 4096);
+        assertEquals(2, cache.size());
+        assertEquals(value, cache.get("bucket", "key1"));
+        assertEquals("value3", cache.get("bucket", "key2"));
+        assertNull(cache.get("other", "key3"));
+        assertEquals(Long.MAX_VALUE, cache.getAge("bucket", "key1"));
+        cache.put("bucket", "key1", value);
+        assertTrue(cache.getAge("bucket", "key1") < Long.MAX_VALUE);
+        cache.close();
+    }
+
+    @Test
+    public void testSkipsValuesThatCannotBeSerialized() throws Exception {
+        DiskCache cache = new DiskCache(file, 4096);
+        cache.put("bucket", "key", "value");
+        cache.put("bucket", "key", new Object());
+
+        assertNull(cache.get("bucket", "key"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testCompactsAndDropsOldestValuesWhenFull() throws Exception {
+        DiskCache cache = new DiskCache(file, 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put("bucket", "key" + i, "value" + i);
+        }
+        assertNotNull(cache.get("bucket", "key99"));
+        assertNull(cache.get("bucket", "key0"));
+        int size = cache.size();
+        cache.close();
+
+        cache = new DiskCache(file, 1024);
+        assertEquals(size, cache.size());
+        assertEquals("value99", cache.get("bucket", "key99"));
+        cache.close();
+    }
+
+    @Test
+    public void testDiscardsCorruptedRecordsWhenReopening() throws Exception {
+        DiskCache cache = new DiskCache(file, 1024);
+        cache.put("bucket", "key1", "value1");
+        cache.put("bucket", "key2", "value2");
+        cache.close();
+
+        // Overwrite the bucket length of the first record:
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(16 + 5);
+        raw.writeChar(Character.MAX_VALUE);
+        raw.close();
+
+        cache = new DiskCache(file, 1024);
+        assertEquals(0, cache.size());
+        cache.put("bucket", "key1", "value1");
+        assertEquals("value1", cache.get("bucket", "key1"));
+        cache.close();
+    }
+
+    @Test
+    public void testCannotOpenFileAlreadyInUse() throws Exception {
+        DiskCache cache = new DiskCache(file, 1024);
+        try {
+            new DiskCache(file, 1024);
+            fail("Cache file must be locked.");
+        } catch (IOException ex) {
+        } finally {
+            cache.close();
+        }
+        new DiskCache(file, 1024).close();
+    }
+
+    @Test
+    public void testTieredCacheOnlyServesRestoredValuesFromDisk() throws Exception {
+        DiskCache disk = new DiskCache(file, 4096);
+        TieredKeyCache cache = new TieredKeyCache(new NearCache(10, 50, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LRU), disk);
+        cache.put("bucket", "key1", "value1");
+        cache.put("bucket", "key2", "value2");
+        disk.close();
+
+        disk = new DiskCache(file, 4096);
+        cache = new TieredKeyCache(new NearCache(10, 50, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LRU), disk);
+        assertEquals("value1", cache.get("bucket", "key1"));
+        assertEquals(Long.MAX_VALUE, cache.getAge("bucket", "key1"));
+        cache.put("bucket", "key2", "value3");
+        Thread.sleep(120);
+        assertNull(cache.get("bucket", "key2"));
+        assertEquals(-1, cache.getAge("bucket", "key2"));
+        assertEquals(1, disk.size());
+        disk.close();
+    }
+
+    @Test
+    public void testResetsFileWrittenWithDifferentCapacity() throws Exception {
+        DiskCache cache = new DiskCache(file, 1024);
+        cache.put("bucket", "key", "value");
+        cache.close();
+
+        cache = new DiskCache(file, 2048);
+        assertNull(cache.get("bucket", "key"));
+        cache.close();
+    }
+}
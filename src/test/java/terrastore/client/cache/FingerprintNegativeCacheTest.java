@@ -0,0 +1,75 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class FingerprintNegativeCacheTest {
+
+    @Test
+    public void testPutAndInvalidateMissingKeys() {
+        FingerprintNegativeCache cache = new FingerprintNegativeCache(1000, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 1000; i++) {
+            cache.putMissing("bucket", "key" + i);
+        }
+        cache.invalidate("bucket", "key0");
+
+        assertFalse(cache.isMissing("bucket", "key0"));
+        assertTrue(cache.isMissing("bucket", "key1"));
+        assertFalse(cache.isMissing("other", "key1"));
+        assertFalse(cache.isMissing("bucketk", "ey1"));
+    }
+
+    @Test
+    public void testReplacesOldestKeysWhenFull() {
+        FingerprintNegativeCache cache = new FingerprintNegativeCache(4, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 100; i++) {
+            cache.putMissing("bucket", "key" + i);
+        }
+        int missing = 0;
+        for (int i = 0; i < 100; i++) {
+            missing += cache.isMissing("bucket", "key" + i) ? 1 : 0;
+        }
+
+        assertTrue(missing <= 4);
+        assertTrue(cache.isMissing("bucket", "key99"));
+    }
+
+    @Test
+    public void testInvalidatesBucket() {
+        FingerprintNegativeCache cache = new FingerprintNegativeCache(100, 1, TimeUnit.MINUTES);
+        cache.putMissing("bucket1", "key");
+        cache.putMissing("bucket2", "key");
+        cache.invalidate("bucket1");
+
+        assertFalse(cache.isMissing("bucket1", "key"));
+        assertTrue(cache.isMissing("bucket2", "key"));
+    }
+
+    @Test
+    public void testExpiresKeys() throws Exception {
+        FingerprintNegativeCache cache = new FingerprintNegativeCache(100, 10, TimeUnit.MILLISECONDS);
+        cache.putMissing("bucket", "key");
+        Thread.sleep(50);
+
+        assertFalse(cache.isMissing("bucket", "key"));
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.easymock.IAnswer;
+import org.junit.Test;
+import terrastore.client.connection.Connection;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class MetadataCacheTest {
+
+    @Test
+    public void testLoadsBucketsOnceUntilInvalidated() throws Exception {
+        Connection connection = createMock(Connection.class);
+        expect(connection.getBuckets()).andReturn(new HashSet<String>(Arrays.asList("bucket1", "bucket2"))).once();
+        expect(connection.getBuckets()).andReturn(Collections.singleton("bucket1")).once();
+        replay(connection);
+
+        MetadataCache cache = new MetadataCache(1, 2, TimeUnit.MINUTES);
+        try {
+            assertEquals(2, cache.getBuckets(connection).size());
+            assertEquals(2, cache.getBuckets(connection).size());
+            cache.invalidateBuckets();
+            assertEquals(Collections.singleton("bucket1"), cache.getBuckets(connection));
+        } finally {
+            cache.stop();
+        }
+        verify(connection);
+    }
+
+    @Test
+    public void testDoesNotPublishBucketsLoadedWhileInvalidated() throws Exception {
+        final MetadataCache cache = new MetadataCache(1, 2, TimeUnit.MINUTES);
+        Connection connection = createMock(Connection.class);
+        expect(connection.getBuckets()).andAnswer(new IAnswer<Set<String>>() {
+
+            @Override
+            public Set<String> answer() {
+                cache.invalidateBuckets();
+                return Collections.singleton("bucket1");
+            }
+        }).once();
+        expect(connection.getBuckets()).andReturn(Collections.<String>emptySet()).once();
+        replay(connection);
+
+        try {
+            assertEquals(Collections.singleton("bucket1"), cache.getBuckets(connection));
+            assertEquals(Collections.<String>emptySet(), cache.getBuckets(connection));
+            assertEquals(Collections.<String>emptySet(), cache.getBuckets(connection));
+        } finally {
+            cache.stop();
+        }
+        verify(connection);
+    }
+
+    @Test
+    public void testRefreshesBucketsInBackground() throws Exception {
+        Connection connection = createMock(Connection.class);
+        expect(connection.getBuckets()).andReturn(Collections.singleton("bucket1")).once();
+        expect(connection.getBuckets()).andReturn(Collections.singleton("bucket2")).atLeastOnce();
+        makeThreadSafe(connection, true);
+        replay(connection);
+
+        MetadataCache cache = new MetadataCache(50, 60000, TimeUnit.MILLISECONDS);
+        try {
+            Set<String> buckets = cache.getBuckets(connection);
+            assertEquals(Collections.singleton("bucket1"), buckets);
+            Thread.sleep(500);
+            assertEquals(Collections.singleton("bucket2"), cache.getBuckets(connection));
+        } finally {
+            cache.stop();
+        }
+        verify(connection);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class NearCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        NearCache cache = new NearCache(2, 0, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LRU);
+        cache.put("bucket", "key1", "value1");
+        cache.put("bucket", "key2", "value2");
+        assertEquals("value1", cache.get("bucket", "key1"));
+        cache.put("bucket", "key3", "value3");
+
+        assertEquals("value1", cache.get("bucket", "key1"));
+        assertNull(cache.get("bucket", "key2"));
+        assertEquals("value3", cache.get("bucket", "key3"));
+    }
+
+    @Test
+    public void testEvictsLeastFrequentlyUsed() {
+        NearCache cache = new NearCache(2, 0, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LFU);
+        cache.put("bucket", "key1", "value1");
+        cache.put("bucket", "key2", "value2");
+        cache.get("bucket", "key1");
+        cache.get("bucket", "key2");
+        cache.get("bucket", "key2");
+        cache.put("bucket", "key3", "value3");
+
+        assertNull(cache.get("bucket", "key1"));
+        assertEquals("value2", cache.get("bucket", "key2"));
+        assertEquals("value3", cache.get("bucket", "key3"));
+    }
+
+    @Test
+    public void testExpiresEntries() throws Exception {
+        NearCache cache = new NearCache(2, 10, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LRU);
+        cache.put("bucket", "key1", "value1");
+        Thread.sleep(50);
+
+        assertNull(cache.get("bucket", "key1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidatesBucket() {
+        NearCache cache = new NearCache(10, 0, TimeUnit.MILLISECONDS, NearCache.EvictionPolicy.LFU);
+        cache.put("bucket1", "key", "value1");
+        cache.put("bucket2", "key", "value2");
+        cache.invalidate("bucket1");
+
+        assertNull(cache.get("bucket1", "key"));
+        assertEquals("value2", cache.get("bucket2", "key"));
+    }
+}
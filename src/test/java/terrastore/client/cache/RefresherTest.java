@@ -0,0 +1,92 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.easymock.IAnswer;
+import org.junit.Test;
+import terrastore.client.BulkOperation;
+import terrastore.client.Values;
+import terrastore.client.connection.Connection;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class RefresherTest {
+
+    @Test
+    public void testRefreshesDueValuesInOneBulkGet() throws Exception {
+        Connection connection = createMock(Connection.class);
+        expect(connection.bulkGet(isA(BulkOperation.Context.class), eq(String.class))).andAnswer(new IAnswer<Values<String>>() {
+
+            @Override
+            public Values<String> answer() {
+                BulkOperation.Context context = (BulkOperation.Context) getCurrentArguments()[0];
+                assertEquals("bucket", context.getBucket());
+                assertEquals(new HashSet<String>(Arrays.asList("key1", "key2")), context.getKeys());
+                Map<String, String> values = new HashMap<String, String>();
+                values.put("key1", "refreshed1");
+                return new Values<String>(values);
+            }
+        }).once();
+        replay(connection);
+
+        NearCache cache = new NearCache(10, 1, TimeUnit.MINUTES, NearCache.EvictionPolicy.LRU);
+        cache.put("bucket", "key1", "value1");
+        cache.put("bucket", "key2", "value2");
+        Refresher refresher = new Refresher(connection, cache, new KeyVersions(), 0, BackgroundExecutor.get(), new StatsCounter());
+        refresher.onHit("bucket", "key1", String.class);
+        refresher.onHit("bucket", "key2", String.class);
+        refresher.onHit("bucket", "key1", String.class);
+        Thread.sleep(500);
+
+        assertEquals("refreshed1", cache.get("bucket", "key1"));
+        assertNull(cache.get("bucket", "key2"));
+        verify(connection);
+    }
+
+    @Test
+    public void testLeavesValuesInvalidatedDuringRefresh() throws Exception {
+        final NearCache cache = new NearCache(10, 1, TimeUnit.MINUTES, NearCache.EvictionPolicy.LRU);
+        final KeyVersions versions = new KeyVersions();
+        Connection connection = createMock(Connection.class);
+        expect(connection.bulkGet(isA(BulkOperation.Context.class), eq(String.class))).andAnswer(new IAnswer<Values<String>>() {
+
+            @Override
+            public Values<String> answer() {
+                versions.invalidate("bucket", "key");
+                cache.invalidate("bucket", "key");
+                return new Values<String>(Collections.singletonMap("key", "refreshed"));
+            }
+        }).once();
+        replay(connection);
+
+        cache.put("bucket", "key", "value");
+        Refresher refresher = new Refresher(connection, cache, versions, 0, BackgroundExecutor.get(), new StatsCounter());
+        refresher.onHit("bucket", "key", String.class);
+        Thread.sleep(500);
+
+        assertNull(cache.get("bucket", "key"));
+        verify(connection);
+    }
+}
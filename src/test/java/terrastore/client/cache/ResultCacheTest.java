@@ -0,0 +1,128 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class ResultCacheTest {
+
+    @Test
+    public void testConcurrentQueriesLoadOnce() throws Exception {
+        final ResultCache cache = new ResultCache(10, 1, TimeUnit.MINUTES);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<String> loader = new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                Thread.sleep(100);
+                return "result";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() {
+                        return cache.get(new QueryKey("bucket", "range", "a", "z"), cache.getDefaultTimeToLive(), loader);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                assertEquals("result", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testExpiresResults() throws Exception {
+        ResultCache cache = new ResultCache(10, 0, TimeUnit.MILLISECONDS);
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<Integer> loader = new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return loads.incrementAndGet();
+            }
+        };
+        QueryKey key = new QueryKey("bucket", "range", "a", "z");
+        long timeToLive = TimeUnit.MILLISECONDS.toNanos(10);
+
+        assertEquals(Integer.valueOf(1), cache.get(key, timeToLive, loader));
+        assertEquals(Integer.valueOf(1), cache.get(key, timeToLive, loader));
+        Thread.sleep(50);
+        assertEquals(Integer.valueOf(2), cache.get(key, timeToLive, loader));
+    }
+
+    @Test
+    public void testExpiresResultsByRequestedTimeToLive() throws Exception {
+        ResultCache cache = new ResultCache(10, 0, TimeUnit.MILLISECONDS);
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<Integer> loader = new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return loads.incrementAndGet();
+            }
+        };
+        QueryKey key = new QueryKey("bucket", "range", "a", "z");
+        long longTimeToLive = TimeUnit.MINUTES.toNanos(1);
+        long shortTimeToLive = TimeUnit.MILLISECONDS.toNanos(10);
+
+        assertEquals(Integer.valueOf(1), cache.get(key, longTimeToLive, loader));
+        Thread.sleep(50);
+        // Loaded by a caller with a longer time to live, but too old for this one:
+        assertEquals(Integer.valueOf(2), cache.get(key, shortTimeToLive, loader));
+        assertEquals(Integer.valueOf(2), cache.get(key, longTimeToLive, loader));
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() {
+        ResultCache cache = new ResultCache(10, 1, TimeUnit.MINUTES);
+        QueryKey key = new QueryKey("bucket", "predicate", "jxpath:/value");
+        try {
+            cache.get(key, cache.getDefaultTimeToLive(), new Callable<String>() {
+
+                @Override
+                public String call() {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("Should throw IllegalStateException!");
+        } catch (IllegalStateException ex) {
+        }
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class TinyLfuCacheTest {
+
+    private static final Weigher LENGTH_WEIGHER = new Weigher() {
+
+        @Override
+        public long weigh(Object value) {
+            return value.toString().length();
+        }
+    };
+
+    @Test
+    public void testBoundsByWeight() {
+        TinyLfuCache cache = new TinyLfuCache(1000, 0, TimeUnit.MILLISECONDS, LENGTH_WEIGHER);
+        for (int i = 0; i < 100; i++) {
+            cache.put("bucket", "key" + i, new String(new char[100]));
+            assertTrue(cache.weight() <= 1000);
+        }
+        assertEquals(10, cache.size());
+        CacheStats stats = cache.getStats();
+        assertEquals(90, stats.getEvictionCount(CacheStats.EvictionCause.SIZE));
+        assertEquals(Long.valueOf(cache.weight()), stats.getWeightByBucket().get("bucket"));
+    }
+
+    @Test
+    public void testDoesNotCacheValuesLargerThanMaxWeight() {
+        TinyLfuCache cache = new TinyLfuCache(10, 0, TimeUnit.MILLISECONDS, LENGTH_WEIGHER);
+        cache.put("bucket", "key", "larger than ten bytes");
+
+        assertNull(cache.get("bucket", "key"));
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testProtectsFrequentlyAccessedEntriesFromScans() {
+        TinyLfuCache cache = new TinyLfuCache(10000, 0, TimeUnit.MILLISECONDS, LENGTH_WEIGHER);
+        Map<String, String> hot = new HashMap<String, String>();
+        for (int i = 0; i < 50; i++) {
+            hot.put("hot" + i, "hot value " + i);
+            cache.put("bucket", "hot" + i, "hot value " + i);
+        }
+        for (int access = 0; access < 5; access++) {
+            for (String key : hot.keySet()) {
+                assertEquals(hot.get(key), cache.get("bucket", key));
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.put("bucket", "scan" + i, "scanned value " + i);
+        }
+
+        for (String key : hot.keySet()) {
+            assertEquals(hot.get(key), cache.get("bucket", key));
+        }
+        assertTrue(cache.weight() <= 10000);
+    }
+
+    @Test
+    public void testExpiresEntries() throws Exception {
+        TinyLfuCache cache = new TinyLfuCache(1000, 10, TimeUnit.MILLISECONDS, LENGTH_WEIGHER);
+        cache.put("bucket", "key", "value");
+        Thread.sleep(50);
+
+        assertNull(cache.get("bucket", "key"));
+        assertEquals(0, cache.weight());
+    }
+}
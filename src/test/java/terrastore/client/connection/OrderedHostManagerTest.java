@@ -50,4 +50,22 @@ public class OrderedHostManagerTest {
         unsuspected = hostManager.getHost();
         assertEquals(host2, unsuspected);
     }
+
+    @Test
+    public void testExposesSuspectedHosts() {
+        String host1 = "http://localhost:8080";
+        String host2 = "http://localhost:8081";
+        OrderedHostManager hostManager = new OrderedHostManager(Arrays.asList(new String[]{host1, host2}));
+        assertEquals(0, hostManager.getLastSuspicionTime());
+
+        hostManager.suspect(host1);
+        assertEquals(host2, hostManager.getActiveHost());
+        assertEquals(Arrays.asList(host1), hostManager.getSuspectedHosts());
+        assertTrue(hostManager.getLastSuspicionTime() > 0);
+        assertEquals(1, hostManager.getSuspicionCount());
+
+        hostManager.suspect(host2);
+        assertEquals(host1, hostManager.getHost());
+        assertEquals(Arrays.asList(host2), hostManager.getSuspectedHosts());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import terrastore.client.TerrastoreClient;
+import terrastore.client.ValuesIterator;
+import terrastore.client.connection.ConnectionMetrics;
+import terrastore.client.connection.NoSuchKeyException;
+import terrastore.client.test.pojostest.PhoneNumber;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class HTTPConnectionMetricsTest {
+
+    private static final String VALUE = "{\"number\":\"123\",\"type\":\"home\"}";
+    private static final String ERROR = "{\"message\":\"Key not found\",\"code\":404}";
+    private static final String RANGE = "{\"key1\":" + VALUE + ",\"key2\":" + VALUE + ",\"key3\":" + VALUE + "}";
+    //
+    private HttpServer server;
+    private StubMetrics metrics;
+    private TerrastoreClient client;
+    private volatile long receivedBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedBytes = drain(exchange.getRequestBody());
+                String path = exchange.getRequestURI().getPath();
+                if (exchange.getRequestMethod().equals("PUT")) {
+                    exchange.sendResponseHeaders(204, -1);
+                } else if (path.equals("/bucket/key")) {
+                    respond(exchange, 200, VALUE);
+                } else if (path.equals("/bucket/range")) {
+                    respond(exchange, 200, RANGE);
+                } else {
+                    respond(exchange, 404, ERROR);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        metrics = new StubMetrics();
+        client = new TerrastoreClient("http://localhost:" + server.getAddress().getPort(), new HTTPConnectionFactory(metrics));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRecordsRequestSize() throws Exception {
+        client.bucket("bucket").key("key").put(new PhoneNumber("123", "home"));
+
+        assertEquals(1, metrics.requests.size());
+        Request request = metrics.requests.get(0);
+        assertEquals(ConnectionMetrics.OperationType.PUT_VALUE, request.type);
+        assertEquals("bucket", request.bucket);
+        assertTrue(request.latency > 0);
+        assertTrue(receivedBytes > 0);
+        assertEquals(receivedBytes, request.requestBytes);
+        assertTrue(metrics.errors.isEmpty());
+    }
+
+    @Test
+    public void testRecordsChunkedResponseSize() throws Exception {
+        assertEquals(new PhoneNumber("123", "home"), client.bucket("bucket").key("key").get(PhoneNumber.class));
+
+        assertEquals(1, metrics.requests.size());
+        Request request = metrics.requests.get(0);
+        assertEquals(ConnectionMetrics.OperationType.GET_VALUE, request.type);
+        assertEquals("bucket", request.bucket);
+        assertEquals(VALUE.length(), request.responseBytes);
+        assertTrue(metrics.errors.isEmpty());
+    }
+
+    @Test
+    public void testRecordsErrors() throws Exception {
+        try {
+            client.bucket("bucket").key("missing").get(PhoneNumber.class);
+            fail("Should have thrown NoSuchKeyException!");
+        } catch (NoSuchKeyException ex) {
+        }
+
+        assertEquals(1, metrics.errors.size());
+        assertEquals(ConnectionMetrics.OperationType.GET_VALUE, metrics.errors.get(0).type);
+        assertEquals(NoSuchKeyException.class, metrics.errors.get(0).errorType);
+        assertEquals(1, metrics.requests.size());
+        assertEquals(ConnectionMetrics.OperationType.GET_VALUE, metrics.requests.get(0).type);
+        assertEquals(ERROR.length(), metrics.requests.get(0).responseBytes);
+    }
+
+    @Test
+    public void testRecordsStreamedRequestOnceClosed() throws Exception {
+        ValuesIterator<PhoneNumber> stream = client.bucket("bucket").range().from("key1").to("key3").stream(PhoneNumber.class);
+        assertTrue(metrics.requests.isEmpty());
+        int entries = 0;
+        while (stream.hasNext()) {
+            stream.next();
+            entries++;
+        }
+        stream.close();
+
+        assertEquals(3, entries);
+        assertEquals(1, metrics.requests.size());
+        Request request = metrics.requests.get(0);
+        assertEquals(ConnectionMetrics.OperationType.STREAM_BY_RANGE, request.type);
+        assertEquals("bucket", request.bucket);
+        assertEquals(RANGE.length(), request.responseBytes);
+        assertTrue(metrics.errors.isEmpty());
+    }
+
+    @Test
+    public void testRecordsStreamedRequestInterleavedWithOtherRequests() throws Exception {
+        ValuesIterator<PhoneNumber> stream = client.bucket("bucket").range().from("key1").to("key3").stream(PhoneNumber.class);
+        assertTrue(stream.hasNext());
+        client.bucket("bucket").key("key").get(PhoneNumber.class);
+        int entries = 0;
+        while (stream.hasNext()) {
+            stream.next();
+            entries++;
+        }
+        stream.close();
+
+        assertEquals(3, entries);
+        assertEquals(2, metrics.requests.size());
+        assertEquals(ConnectionMetrics.OperationType.GET_VALUE, metrics.requests.get(0).type);
+        assertEquals(VALUE.length(), metrics.requests.get(0).responseBytes);
+        assertEquals(ConnectionMetrics.OperationType.STREAM_BY_RANGE, metrics.requests.get(1).type);
+        assertEquals(RANGE.length(), metrics.requests.get(1).responseBytes);
+        assertTrue(metrics.errors.isEmpty());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // Zero length means chunked:
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream output = exchange.getResponseBody();
+        output.write(body.getBytes("UTF-8"));
+        output.close();
+    }
+
+    private static long drain(InputStream input) throws IOException {
+        long count = 0;
+        byte[] buffer = new byte[1024];
+        int read = input.read(buffer);
+        while (read != -1) {
+            count += read;
+            read = input.read(buffer);
+        }
+        return count;
+    }
+
+    private static class StubMetrics implements ConnectionMetrics {
+
+        private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+        private final List<Request> errors = Collections.synchronizedList(new ArrayList<Request>());
+
+        @Override
+        public void onRequest(OperationType type, String bucket, long latency, long requestBytes, long responseBytes) {
+            requests.add(new Request(type, bucket, latency, requestBytes, responseBytes, null));
+        }
+
+        @Override
+        public void onError(OperationType type, String bucket, Class<? extends Throwable> errorType) {
+            errors.add(new Request(type, bucket, -1, -1, -1, errorType));
+        }
+    }
+
+    private static class Request {
+
+        private final ConnectionMetrics.OperationType type;
+        private final String bucket;
+        private final long latency;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final Class<? extends Throwable> errorType;
+
+        public Request(ConnectionMetrics.OperationType type, String bucket, long latency, long requestBytes, long responseBytes, Class<? extends Throwable> errorType) {
+            this.type = type;
+            this.bucket = bucket;
+            this.latency = latency;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.errorType = errorType;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class MonitoredConnectionManagerTest {
+
+    @Test
+    public void testTracksLeasedAndIdleConnectionsByHost() throws Exception {
+        MonitoredConnectionManager manager = new MonitoredConnectionManager();
+        HostConfiguration host = new HostConfiguration();
+        host.setHost("localhost", 8080);
+        try {
+            HttpConnection connection = manager.getConnectionWithTimeout(host, 1000);
+            assertEquals(Integer.valueOf(1), manager.getLeasedConnections().get("localhost:8080"));
+            assertEquals(Integer.valueOf(0), manager.getIdleConnections().get("localhost:8080"));
+            assertEquals(Integer.valueOf(0), manager.getPendingConnections().get("localhost:8080"));
+            assertEquals(Long.valueOf(1), manager.getAcquiredConnections().get("localhost:8080"));
+            connection.releaseConnection();
+            assertEquals(Integer.valueOf(0), manager.getLeasedConnections().get("localhost:8080"));
+            assertEquals(Integer.valueOf(1), manager.getIdleConnections().get("localhost:8080"));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testCanBeRegisteredAsMXBean() throws Exception {
+        MonitoredConnectionManager manager = new MonitoredConnectionManager();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("terrastore.client:type=ConnectionPool");
+        server.registerMBean(manager, name);
+        try {
+            HostConfiguration host = new HostConfiguration();
+            host.setHost("localhost", 8080);
+            manager.getConnectionWithTimeout(host, 1000).releaseConnection();
+            TabularData idle = (TabularData) server.getAttribute(name, "IdleConnections");
+            assertEquals(1, idle.size());
+        } finally {
+            server.unregisterMBean(name);
+            manager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.connection.resteasy;
+
+import javax.ws.rs.core.UriBuilder;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class RequestUrisTest {
+
+    private static final String HOST = "http://localhost:8080";
+
+    @Test
+    public void testEncodesLikeUriBuilder() {
+        RequestUris uris = new RequestUris();
+        for (char c = 32; c < 127; c++) {
+            if (c != '{' && c != '}') {
+                assertEncodedLikeUriBuilder(uris, "a" + c + "b");
+            }
+        }
+        assertEncodedLikeUriBuilder(uris, "\u00e8\u20ac %41%zz%4a%");
+        assertEncodedLikeUriBuilder(uris, "plain");
+    }
+
+    @Test
+    public void testEncodesSupplementaryCharactersAsUtf8() {
+        RequestUris uris = new RequestUris();
+        assertEquals(HOST + "/%F0%9F%98%80?q=%F0%9F%98%80", uris.host(HOST).path("\ud83d\ude00").query("q", "\ud83d\ude00").toString());
+    }
+
+    @Test
+    public void testStripsTrailingSlashFromHost() {
+        RequestUris uris = new RequestUris();
+        assertEquals(HOST + "/bucket/key", uris.host(HOST + "/").bucket("bucket").path("key").toString());
+    }
+
+    @Test
+    public void testCachesBuckets() {
+        RequestUris uris = new RequestUris();
+        for (int i = 0; i < RequestUris.MAX_CACHED_BUCKETS * 2; i++) {
+            assertEquals(HOST + "/bucket%20" + i, uris.host(HOST).bucket("bucket " + i).toString());
+        }
+        assertEquals(HOST + "/bucket%200", uris.host(HOST).bucket("bucket 0").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullQueryValueIsRejected() {
+        new RequestUris().host(HOST).bucket("bucket").query("predicate", null);
+    }
+
+    private void assertEncodedLikeUriBuilder(RequestUris uris, String value) {
+        String expected = UriBuilder.fromUri(HOST).path(value).path(value).queryParam("first", value).queryParam("second", value).build().toString();
+        String actual = uris.host(HOST).bucket(value).path(value).query("first", value).query("second", value).toString();
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class JsonBufferRecyclerTest {
+
+    @Test
+    public void testReadFullyRecyclesBuffer() throws Exception {
+        JsonBufferRecycler recycler = JsonBufferRecycler.get();
+        byte[] small = new byte[100];
+        Arrays.fill(small, (byte) 'a');
+
+        byte[] buffer = recycler.getBuffer();
+        assertArrayEquals(small, recycler.readFully(new ByteArrayInputStream(small)));
+        assertSame(buffer, recycler.getBuffer());
+        assertSame(recycler, JsonBufferRecycler.get());
+    }
+
+    @Test
+    public void testReadFullyGrowsAndShrinksBuffer() throws Exception {
+        JsonBufferRecycler recycler = JsonBufferRecycler.get();
+        byte[] large = new byte[1024 * 1024 * 4];
+        Arrays.fill(large, (byte) 'a');
+        byte[] small = new byte[100];
+
+        assertArrayEquals(large, recycler.readFully(new ByteArrayInputStream(large)));
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(small, recycler.readFully(new ByteArrayInputStream(small)));
+        }
+        assertTrue(recycler.getBuffer().length < large.length);
+    }
+}
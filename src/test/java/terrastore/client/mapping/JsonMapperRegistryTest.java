@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class JsonMapperRegistryTest {
+
+    @Test
+    public void testSharedMapperWithWarmedUpTypes() throws Exception {
+        JsonMapperRegistry registry = new JsonMapperRegistry(new ArrayList<JsonObjectDescriptor>(), Arrays.<Class<?>>asList(TestValue.class, byte[].class));
+        JsonObjectReader reader = new JsonObjectReader(registry);
+        JsonObjectWriter writer = new JsonObjectWriter(registry);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        TestValue value = new TestValue();
+        value.setValue("value1");
+        writer.writeTo(value, TestValue.class, TestValue.class, null, null, null, output);
+        TestValue read = (TestValue) reader.readFrom(TestValue.class, TestValue.class, null, null, null, new ByteArrayInputStream(output.toByteArray()));
+        assertEquals("value1", read.getValue());
+    }
+
+    public static class TestValue {
+
+        private String value;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import org.codehaus.jackson.JsonNode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class JsonObjectReaderTest {
+
+    private static final String VALUE = "{\"value\" : \"value1\", \"nested\":[1,2]}";
+
+    @Test
+    public void testReadAndWriteRawBytes() throws Exception {
+        JsonObjectReader reader = new JsonObjectReader(new ArrayList<JsonObjectDescriptor>());
+        JsonObjectWriter writer = new JsonObjectWriter(new ArrayList<JsonObjectDescriptor>());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        byte[] value = (byte[]) reader.readFrom(byte[].class, byte[].class, null, null, null, new ByteArrayInputStream(VALUE.getBytes("UTF-8")));
+        assertEquals(VALUE, new String(value, "UTF-8"));
+
+        writer.writeTo(value, byte[].class, byte[].class, null, null, null, output);
+        assertEquals(VALUE, new String(output.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testReadAndWriteByteBuffer() throws Exception {
+        JsonObjectReader reader = new JsonObjectReader(new ArrayList<JsonObjectDescriptor>());
+        JsonObjectWriter writer = new JsonObjectWriter(new ArrayList<JsonObjectDescriptor>());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ByteBuffer value = (ByteBuffer) reader.readFrom(ByteBuffer.class, ByteBuffer.class, null, null, null, new ByteArrayInputStream(VALUE.getBytes("UTF-8")));
+        assertEquals(VALUE.length(), value.remaining());
+
+        writer.writeTo(value, ByteBuffer.class, ByteBuffer.class, null, null, null, output);
+        assertEquals(VALUE, new String(output.toByteArray(), "UTF-8"));
+        assertEquals(VALUE.length(), value.remaining());
+    }
+
+    @Test
+    public void testReadProjected() throws Exception {
+        JsonObjectReader reader = new JsonObjectReader(new ArrayList<JsonObjectDescriptor>());
+
+        Map value = reader.readProjected(Map.class, Collections.singleton("value"), new ByteArrayInputStream(VALUE.getBytes("UTF-8")));
+        assertEquals(1, value.size());
+        assertEquals("value1", value.get("value"));
+    }
+
+    @Test
+    public void testReadJsonTree() throws Exception {
+        JsonObjectReader reader = new JsonObjectReader(new ArrayList<JsonObjectDescriptor>());
+
+        JsonNode value = (JsonNode) reader.readFrom(JsonNode.class, JsonNode.class, null, null, null, new ByteArrayInputStream(VALUE.getBytes("UTF-8")));
+        assertEquals("value1", value.get("value").getTextValue());
+        assertEquals(2, value.get("nested").size());
+    }
+}
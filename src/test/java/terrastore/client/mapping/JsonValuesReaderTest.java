@@ -0,0 +1,173 @@
+/**
+ * Copyright 2009 - 2011 Sergio Bossa (sergio.bossa@gmail.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package terrastore.client.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import terrastore.client.LazyValues;
+import terrastore.client.OffHeapValues;
+import terrastore.client.SpilledValues;
+import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
+import static org.junit.Assert.*;
+
+/**
+ * @author Sergio Bossa
+ */
+public class JsonValuesReaderTest {
+
+    private static final String VALUES = "{\"key1\":{\"value\":\"value1\"},\"key2\":{\"value\":\"value2\"}}";
+
+    @Test
+    public void testReadStream() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+        StreamResource resource = new StreamResource();
+
+        ValuesIterator<Map> values = reader.readStream(Map.class, new ByteArrayInputStream(VALUES.getBytes("UTF-8")), resource);
+
+        assertTrue(values.hasNext());
+        Map.Entry<String, Map> entry = values.next();
+        assertEquals("key1", entry.getKey());
+        assertEquals("value1", entry.getValue().get("value"));
+        assertFalse(resource.released);
+        assertTrue(values.hasNext());
+        entry = values.next();
+        assertEquals("key2", entry.getKey());
+        assertEquals("value2", entry.getValue().get("value"));
+        assertFalse(values.hasNext());
+        assertTrue(resource.released);
+        assertFalse(resource.aborted);
+    }
+
+    @Test
+    public void testCloseStreamBeforeConsumingAllValues() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+        StreamResource resource = new StreamResource();
+
+        ValuesIterator<Map> values = reader.readStream(Map.class, new ByteArrayInputStream(VALUES.getBytes("UTF-8")), resource);
+
+        assertTrue(values.hasNext());
+        values.close();
+        assertTrue(resource.aborted);
+        assertFalse(resource.released);
+    }
+
+    @Test
+    public void testReadLazily() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+        String values = "{\"key1\":{\"value\":{\"nested\":[1,2]}},\"key2\" : \"value2\",\"key3\":3}";
+
+        LazyValues<Object> lazy = reader.readLazily(Object.class, new ByteArrayInputStream(values.getBytes("UTF-8")));
+
+        assertEquals(3, lazy.size());
+        assertEquals("value2", lazy.get("key2"));
+        assertEquals(3, lazy.get("key3"));
+        Map value1 = (Map) ((Map) lazy.get("key1")).get("value");
+        assertEquals(2, ((List) value1.get("nested")).size());
+        assertSame(lazy.get("key1"), lazy.get("key1"));
+        assertNull(lazy.get("key4"));
+    }
+
+    @Test
+    public void testReadRawValues() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+
+        Values<byte[]> values = reader.readFrom(Values.class, byte[].class, null, null, null, new ByteArrayInputStream(VALUES.getBytes("UTF-8")));
+
+        assertEquals(2, values.size());
+        assertEquals("{\"value\":\"value1\"}", new String(values.get("key1"), "UTF-8"));
+        assertEquals("{\"value\":\"value2\"}", new String(values.get("key2"), "UTF-8"));
+    }
+
+    @Test
+    public void testReadProjected() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+        String values = "{\"key1\":{\"value\":\"value1\",\"other\":{\"nested\":[1,2]}},\"key2\":{\"other\":2,\"value\":\"value2\"}}";
+
+        Values<Map> projected = reader.readProjected(Map.class, Collections.singleton("value"), new ByteArrayInputStream(values.getBytes("UTF-8")));
+
+        assertEquals(2, projected.size());
+        assertEquals(1, projected.get("key1").size());
+        assertEquals("value1", projected.get("key1").get("value"));
+        assertEquals(1, projected.get("key2").size());
+        assertEquals("value2", projected.get("key2").get("value"));
+    }
+
+    @Test
+    public void testReadSpillingUnderThreshold() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+
+        Values<Map> values = reader.readSpilling(Map.class, 1024, new ByteArrayInputStream(VALUES.getBytes("UTF-8")));
+
+        assertTrue(values instanceof LazyValues);
+        assertEquals(2, values.size());
+        assertEquals("value1", values.get("key1").get("value"));
+        assertEquals("value2", values.get("key2").get("value"));
+    }
+
+    @Test
+    public void testReadSpillingOverThreshold() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+
+        Values<byte[]> raw = reader.readSpilling(byte[].class, 10, new ByteArrayInputStream(VALUES.getBytes("UTF-8")));
+        Values<Map> values = reader.readSpilling(Map.class, 10, new ByteArrayInputStream(VALUES.getBytes("UTF-8")));
+
+        assertTrue(values instanceof SpilledValues);
+        assertEquals(2, values.size());
+        assertEquals("value1", values.get("key1").get("value"));
+        assertEquals("value2", values.get("key2").get("value"));
+        assertEquals("{\"value\":\"value2\"}", new String(raw.get("key2"), "UTF-8"));
+    }
+
+    @Test
+    public void testReadOffHeap() throws Exception {
+        JsonValuesReader reader = new JsonValuesReader(new ArrayList<JsonObjectDescriptor>());
+
+        OffHeapValues<Map> values = reader.readOffHeap(Map.class, new ByteArrayInputStream(VALUES.getBytes("UTF-8")));
+
+        assertEquals(2, values.size());
+        assertEquals("value1", values.get("key1").get("value"));
+        assertEquals("value2", values.get("key2").get("value"));
+        values.close();
+        assertEquals(2, values.size());
+        try {
+            values.get("key1");
+            fail("Should have thrown an exception!");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    private static class StreamResource implements JsonValuesIterator.Resource {
+
+        private boolean released;
+        private boolean aborted;
+
+        @Override
+        public void release() throws IOException {
+            released = true;
+        }
+
+        @Override
+        public void abort() throws IOException {
+            aborted = true;
+        }
+    }
+}
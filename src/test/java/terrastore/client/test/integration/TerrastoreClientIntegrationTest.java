@@ -16,10 +16,13 @@
 package terrastore.client.test.integration;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -36,9 +39,11 @@ import org.junit.Test;
 import terrastore.client.BucketOperation;
 import terrastore.client.ClusterStats;
 import terrastore.client.KeyOperation;
+import terrastore.client.RangeCursor;
 import terrastore.client.TerrastoreClient;
 import terrastore.client.TerrastoreClientException;
 import terrastore.client.Values;
+import terrastore.client.ValuesIterator;
 import terrastore.client.connection.NoSuchKeyException;
 import terrastore.client.connection.TerrastoreConnectionException;
 import terrastore.client.connection.UnsatisfiedConditionException;
@@ -170,6 +175,17 @@ public class TerrastoreClientIntegrationTest {
         bucket.key("not_found").get(TestValue.class);
     }
 
+    @Test
+    public void testGetValueIfPresentAndExists() throws Exception {
+        bucket.key("key1").put(TEST_VALUE_1);
+        assertEquals(TEST_VALUE_1, bucket.key("key1").getIfPresent(TestValue.class));
+        assertNull(bucket.key("not_found").getIfPresent(TestValue.class));
+        assertTrue(bucket.key("key1").exists());
+        assertFalse(bucket.key("not_found").exists());
+        assertTrue(bucket.key("key1").conditional("jxpath:/value").exists());
+        assertNull(bucket.key("key1").conditional("jxpath:/notFound").getIfPresent(TestValue.class));
+    }
+
     @Test
     public void testGetAllValuesWithNoLimit() throws Exception {
         bucket.key("key1").put(TEST_VALUE_1);
@@ -212,6 +228,30 @@ public class TerrastoreClientIntegrationTest {
         assertTrue(values.containsValue(TEST_VALUE_1) || values.containsValue(TEST_VALUE_2));
     }
 
+    @Test
+    public void testIterateAllValuesByChunksAndResume() throws Exception {
+        bucket.key("key1").put(TEST_VALUE_1);
+        bucket.key("key2").put(TEST_VALUE_2);
+        bucket.key("key3").put(TEST_VALUE_3);
+
+        /**
+         * Sleep needed for operations comprising multiple keys, to allow the cluster propagate keys information.
+         */
+        Thread.sleep(1000);
+        //
+
+        RangeCursor<TestValue> iterator = bucket.values().limit(2).iterator(TestValue.class);
+        assertEquals("key1", iterator.next().getKey());
+        assertEquals(1, iterator.getProgress());
+        String checkpoint = iterator.getCheckpoint();
+        iterator.close();
+
+        iterator = bucket.values().limit(2).resumeFrom(checkpoint).iterator(TestValue.class);
+        assertEquals("key2", iterator.next().getKey());
+        assertEquals("key3", iterator.next().getKey());
+        assertFalse(iterator.hasNext());
+    }
+
     @Test
     public void testDoRangeQueryWithNoPredicate() throws Exception {
         bucket.key("key1").put(TEST_VALUE_1);
@@ -282,6 +322,77 @@ public class TerrastoreClientIntegrationTest {
         assertEquals(0, result.size());
     }
 
+    @Test
+    public void testStreamRangeQuery() throws Exception {
+        bucket.key("key1").put(TEST_VALUE_1);
+        bucket.key("key2").put(TEST_VALUE_2);
+        bucket.key("key3").put(TEST_VALUE_3);
+
+        /**
+         * Sleep needed for operations comprising multiple keys, to allow the cluster propagate keys information.
+         */
+        Thread.sleep(1000);
+        //
+
+        ValuesIterator<TestValue> stream = bucket.range().from("key2").to("key3").stream(TestValue.class);
+
+        assertTrue(stream.hasNext());
+        assertEquals(TEST_VALUE_2, stream.next().getValue());
+        assertTrue(stream.hasNext());
+        assertEquals(TEST_VALUE_3, stream.next().getValue());
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void testIterateRangeByPages() throws Exception {
+        bucket.key("key1").put(TEST_VALUE_1);
+        bucket.key("key2").put(TEST_VALUE_2);
+        bucket.key("key3").put(TEST_VALUE_3);
+        bucket.key("key4").put(TEST_VALUE_1);
+        bucket.key("key5").put(TEST_VALUE_2);
+
+        /**
+         * Sleep needed for operations comprising multiple keys, to allow the cluster propagate keys information.
+         */
+        Thread.sleep(1000);
+        //
+
+        ValuesIterator<TestValue> iterator = bucket.range().from("key2").to("key5").limit(2).iterator(TestValue.class);
+
+        List<String> keys = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        assertEquals(4, keys.size());
+        assertEquals("key2", keys.get(0));
+        assertEquals("key3", keys.get(1));
+        assertEquals("key4", keys.get(2));
+        assertEquals("key5", keys.get(3));
+    }
+
+    @Test
+    public void testIterateRangeInParallel() throws Exception {
+        bucket.key("key1").put(TEST_VALUE_1);
+        bucket.key("key2").put(TEST_VALUE_2);
+        bucket.key("key3").put(TEST_VALUE_3);
+        bucket.key("key4").put(TEST_VALUE_1);
+        bucket.key("key5").put(TEST_VALUE_2);
+
+        /**
+         * Sleep needed for operations comprising multiple keys, to allow the cluster propagate keys information.
+         */
+        Thread.sleep(1000);
+        //
+
+        ValuesIterator<TestValue> iterator = bucket.range().from("key1").to("key5").limit(2).parallelIterator(TestValue.class, Arrays.asList("key3", "key4"), true);
+
+        List<String> keys = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next().getKey());
+        }
+        assertEquals(Arrays.asList("key1", "key2", "key3", "key4", "key5"), keys);
+    }
+
     @Test
     public void testDoRangeBasedDeleteWithNoPredicate() throws Exception {
         bucket.key("key1").put(TEST_VALUE_1);